@@ -0,0 +1,109 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente de carga para o KeyValueServer. Cada cliente abre uma ligação e envia em pipeline lotes de pedidos SET e
+ * GET, lendo depois as respostas do lote. No fim são apresentados o débito total e a latência média e percentis por
+ * lote. Caso não seja indicado um servidor é arrancado um localmente.
+ *
+ * Utilização: KeyValueLoadClient [host:port] [clients] [requests por cliente] [pedidos por lote] [poolSize]
+ */
+public class KeyValueLoadClient {
+    public static void main(String[] args) throws Exception {
+        String address = args.length > 0 ? args[0] : "local";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        int batch = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+        int poolSize = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        if (clients <= 0 || batch <= 0 || requests < batch)
+            throw new IllegalArgumentException("clients and batch must be positive and requests at least batch");
+
+        KeyValueServer server = null;
+        SimpleThreadPoolExecutor threadPool = null;
+        Thread serverThread = null;
+        InetSocketAddress target;
+        if (address.equals("local")) {
+            threadPool = new SimpleThreadPoolExecutor(poolSize, 10000);
+            server = new KeyValueServer(new InetSocketAddress("localhost", 0), threadPool);
+            KeyValueServer s = server;
+            serverThread = new Thread(() -> {
+                try {
+                    s.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            serverThread.start();
+            target = new InetSocketAddress("localhost", server.getPort());
+        } else {
+            String[] parts = address.split(":");
+            target = new InetSocketAddress(parts[0], Integer.parseInt(parts[1]));
+        }
+
+        int batches = requests / batch;
+        long[][] latencies = new long[clients][batches];
+        AtomicLong failures = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            int tid = i;
+            threads[i] = new Thread(() -> {
+                try (Socket socket = new Socket(target.getHostName(), target.getPort())) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream output = socket.getOutputStream();
+                    BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    StringBuilder request = new StringBuilder();
+                    for (int b = 0; b < batches; b++) {
+                        request.setLength(0);
+                        for (int r = 0; r < batch; r++) {
+                            String key = "k" + tid + "-" + (r % 16);
+                            if ((r & 1) == 0)
+                                request.append("SET ").append(key).append(' ').append(b).append('\n');
+                            else
+                                request.append("GET ").append(key).append('\n');
+                        }
+                        long start = System.nanoTime();
+                        output.write(request.toString().getBytes(StandardCharsets.UTF_8));
+                        output.flush();
+                        for (int r = 0; r < batch; r++) {
+                            String response = input.readLine();
+                            if (response == null || response.startsWith("ERROR"))
+                                failures.incrementAndGet();
+                        }
+                        latencies[tid][b] = System.nanoTime() - start;
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        long total = (long) clients * batches * batch;
+        System.out.printf("<-- clients: %d, requests: %d, failures: %d, time: %d ms, %.0f requests/s%n",
+                clients, total, failures.get(), elapsed / 1000000, total * 1e9 / elapsed);
+        System.out.printf("<-- batch latency (us): mean %.1f, p50 %d, p99 %d, max %d%n",
+                Arrays.stream(all).average().orElse(0) / 1000, all[all.length / 2] / 1000,
+                all[(int) (all.length * 0.99)] / 1000, all[all.length - 1] / 1000);
+
+        if (server != null) {
+            server.shutdown();
+            serverThread.join();
+            threadPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * Servidor chave-valor em que uma única thread (a que chama run) trata de todas as ligações através de um Selector,
+ * sendo o processamento dos comandos entregue ao SimpleThreadPoolExecutor. O protocolo é baseado em linhas, tal como o
+ * dos servidores do 3º trabalho: SET key value, GET key e KEYS.
+ */
+public class KeyValueServer {
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    private static final int DISPATCH_RETRY_INTERVAL = 1;
+
+    private final Map<String, BiFunction<KeyValueServer, String[], String>> handlers = new HashMap<>();
+    private final ConcurrentHashMap<String, String> store = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Connection> readyToWrite = new ConcurrentLinkedQueue<>();
+    private final List<Connection> pendingDispatch = new ArrayList<>();  // apenas acedida pela thread do selector
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final SimpleThreadPoolExecutor threadPool;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private volatile boolean isShuttingDown;
+
+    public KeyValueServer(InetSocketAddress address, SimpleThreadPoolExecutor threadPool) throws IOException {
+        this.threadPool = threadPool;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        handlers.put("SET", KeyValueServer::processSet);
+        handlers.put("GET", KeyValueServer::processGet);
+        handlers.put("KEYS", KeyValueServer::processKeys);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Ciclo do selector. Em cada iteração são activadas as escritas das ligações com respostas prontas, são
+     * reenviados ao ThreadPool os comandos que não puderam ser entregues na iteração anterior e são tratados os
+     * eventos de aceitação, leitura e escrita. A thread do selector nunca bloqueia à espera do ThreadPool: caso este
+     * esteja cheio a ligação fica pendente e o selector volta a tentar passado DISPATCH_RETRY_INTERVAL
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        try {
+            while (!isShuttingDown) {
+                selector.select(pendingDispatch.isEmpty() ? 0 : DISPATCH_RETRY_INTERVAL);
+
+                Connection ready;
+                while ((ready = readyToWrite.poll()) != null) {
+                    if (ready.key.isValid())
+                        ready.key.interestOps(ready.key.interestOps() | SelectionKey.OP_WRITE);
+                }
+
+                retryDispatch();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable())
+                            accept();
+                        if (key.isValid() && key.isReadable())
+                            ((Connection) key.attachment()).read();
+                        if (key.isValid() && key.isWritable())
+                            ((Connection) key.attachment()).write();
+                    } catch (IOException e) {
+                        if (key.attachment() != null)
+                            ((Connection) key.attachment()).close();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() != null)
+                    ((Connection) key.attachment()).close();
+            }
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    /**
+     * Termina o ciclo do selector, fechando todas as ligações. O ThreadPool não é encerrado, uma vez que pertence a
+     * quem o passou ao servidor
+     */
+    public void shutdown() {
+        isShuttingDown = true;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void retryDispatch() {
+        if (pendingDispatch.isEmpty())
+            return;
+        List<Connection> retry = new ArrayList<>(pendingDispatch);
+        pendingDispatch.clear();
+        for (Connection connection : retry) {
+            if (connection.key.isValid())
+                connection.dispatch();
+        }
+    }
+
+    private static String processSet(KeyValueServer server, String[] cmd) {
+        if (cmd.length - 1 != 2)
+            return String.format("ERROR - Wrong number of arguments (given %d, expected 2)%n", cmd.length - 1);
+        server.store.put(cmd[1], cmd[2]);
+        return "OK\n";
+    }
+
+    private static String processGet(KeyValueServer server, String[] cmd) {
+        if (cmd.length - 1 != 1)
+            return String.format("ERROR - Wrong number of arguments (given %d, expected 1)%n", cmd.length - 1);
+        String value = server.store.get(cmd[1]);
+        return value == null ? "(nil)\n" : "\"" + value + "\"\n";
+    }
+
+    private static String processKeys(KeyValueServer server, String[] cmd) {
+        if (cmd.length - 1 != 0)
+            return String.format("ERROR - Wrong number of arguments (given %d, expected 0)%n", cmd.length - 1);
+        StringBuilder response = new StringBuilder();
+        int ix = 1;
+        for (String key : server.store.keySet())
+            response.append(ix++).append(") \"").append(key).append("\"\n");
+        return response.append('\n').toString();
+    }
+
+    /**
+     * Classe para representar uma ligação de um cliente. Os comandos de uma mesma ligação são executados por ordem e
+     * por uma única tarefa de cada vez (scheduled), para que as respostas sejam enviadas pela ordem dos pedidos;
+     * ligações diferentes são processadas em paralelo pelo ThreadPool.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer input = bufferPool.acquire();
+        private final ConcurrentLinkedQueue<String> commands = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private ByteBuffer output;    // respostas ainda não entregues ao selector, só acedido pela tarefa de scheduled
+        private SelectionKey key;
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Lê para o buffer de entrada e separa as linhas completas, que são colocadas na fila de comandos. Uma linha
+         * maior que o buffer de entrada é considerada um erro de protocolo e a ligação é fechada
+         */
+        private void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+
+            input.flip();
+            int start = input.position();
+            boolean decoded = false;
+            for (int i = start; i < input.limit(); i++) {
+                if (input.get(i) != '\n')
+                    continue;
+                byte[] line = new byte[i - start];
+                input.get(line);
+                input.get();    // '\n'
+                String command = new String(line, StandardCharsets.UTF_8).trim();
+                if (!command.isEmpty()) {
+                    commands.add(command);
+                    decoded = true;
+                }
+                start = i + 1;
+            }
+            input.compact();
+
+            if (!input.hasRemaining()) {
+                close();
+                return;
+            }
+            if (decoded && scheduled.compareAndSet(false, true))
+                dispatch();
+        }
+
+        /**
+         * Entrega ao ThreadPool a tarefa que processa os comandos pendentes, sem esperar por uma thread disponível.
+         * Só é chamado pela thread do selector e com scheduled a true. Caso o ThreadPool tenha sido encerrado os
+         * comandos nunca serão processados e a ligação é fechada
+         */
+        private void dispatch() {
+            try {
+                if (threadPool.execute(this::processCommands, 0))
+                    return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RejectedExecutionException e) {
+                close();
+                return;
+            }
+            pendingDispatch.add(this);
+        }
+
+        /**
+         * Executado por uma thread do ThreadPool. Processa todos os comandos pendentes, juntando as respostas no
+         * mínimo de buffers, que são colocados na fila de saída, e avisa o selector que há respostas para escrever.
+         * Antes de terminar volta a verificar a fila de comandos, uma vez que o selector pode ter acrescentado
+         * comandos depois da última leitura e visto scheduled ainda a true
+         */
+        private void processCommands() {
+            boolean responded = false;
+            do {
+                String command;
+                while ((command = commands.poll()) != null) {
+                    respond(execute(command));
+                    responded = true;
+                }
+                flush();
+                scheduled.set(false);
+            } while (!commands.isEmpty() && scheduled.compareAndSet(false, true));
+
+            if (closed) {
+                releaseResponses();    // a ligação foi fechada enquanto os comandos eram processados
+            } else if (responded) {
+                readyToWrite.add(this);
+                selector.wakeup();
+            }
+        }
+
+        private String execute(String command) {
+            String[] cmd = command.split(" ");
+            BiFunction<KeyValueServer, String[], String> handler = handlers.get(cmd[0].toUpperCase());
+            if (handler == null)
+                return "ERROR - Unknown message type\n";
+            return handler.apply(KeyValueServer.this, cmd);
+        }
+
+        /**
+         * Acrescenta a resposta ao buffer de saída actual, passando para um novo buffer quando não cabe. Uma resposta
+         * maior que BUFFER_SIZE fica sozinha num buffer com o seu tamanho
+         */
+        private void respond(String response) {
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            if (output != null && output.remaining() < bytes.length)
+                flush();
+            if (output == null)
+                output = bytes.length <= BUFFER_SIZE ? bufferPool.acquire() : ByteBuffer.allocate(bytes.length);
+            output.put(bytes);
+        }
+
+        private void flush() {
+            if (output == null)
+                return;
+            output.flip();
+            responses.add(output);
+            output = null;
+        }
+
+        /**
+         * Devolve ao BufferPool os buffers das respostas que não chegaram a ser escritas. Pode ser chamado pela
+         * thread do selector e pela tarefa de processamento, mas cada buffer só é retirado da fila por uma delas
+         */
+        private void releaseResponses() {
+            ByteBuffer buffer;
+            while ((buffer = responses.poll()) != null)
+                bufferPool.release(buffer);
+        }
+
+        /**
+         * Escreve as respostas pendentes sem bloquear. Caso o socket não aceite mais dados a escrita continua no
+         * próximo evento OP_WRITE; quando todas as respostas foram escritas deixa de haver interesse nesse evento
+         */
+        private void write() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = responses.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining())
+                    return;
+                responses.poll();
+                bufferPool.release(buffer);
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            // uma resposta pode ter sido acrescentada depois do peek; nesse caso readyToWrite volta a activar a escrita
+        }
+
+        private void close() {
+            if (closed)
+                return;
+            closed = true;
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                ;//ignored
+            }
+            bufferPool.release(input);
+            releaseResponses();
+        }
+    }
+
+    /**
+     * Conjunto de buffers directos reutilizáveis, para que a leitura e escrita nas ligações não aloque um buffer por
+     * pedido. Buffers com outra capacidade (respostas grandes) não são guardados
+     */
+    private static class BufferPool {
+        private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final int bufferSize, maxBuffers;
+
+        private BufferPool(int bufferSize, int maxBuffers) {
+            this.bufferSize = bufferSize;
+            this.maxBuffers = maxBuffers;
+        }
+
+        private ByteBuffer acquire() {
+            ByteBuffer buffer = buffers.poll();
+            return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        private void release(ByteBuffer buffer) {
+            if (buffer.capacity() != bufferSize || !buffer.isDirect() || buffers.size() >= maxBuffers)
+                return;
+            buffer.clear();
+            buffers.add(buffer);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int poolSize = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(poolSize, 10000);
+        KeyValueServer server = new KeyValueServer(new InetSocketAddress(port), threadPool);
+        System.out.printf("--> Key-value server listening on port %d%n", server.getPort());
+        server.run();
+        threadPool.shutdown();
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ParallelFileSearch {
+    private final SimpleThreadPoolExecutor threadPool;
+    private final int numberOfFilesToPresent;
+
+    public ParallelFileSearch(SimpleThreadPoolExecutor threadPool, int numberOfFilesToPresent) {
+        if (numberOfFilesToPresent <= 0)
+            throw new IllegalArgumentException("numberOfFilesToPresent must be positive");
+        this.threadPool = threadPool;
+        this.numberOfFilesToPresent = numberOfFilesToPresent;
+    }
+
+    /**
+     * Percorre recursivamente o directório root e os seus sub-directórios, submetendo ao ThreadPool uma tarefa por
+     * cada directório e por cada ficheiro encontrado. As ligações simbólicas para directórios não são seguidas, pelo
+     * que uma ligação para um directório ascendente não faz a pesquisa entrar em ciclo. Cada thread que executa tarefas acumula os resultados parciais
+     * (maiores ficheiros, número de ficheiros e estatísticas de palavras) num acumulador próprio, evitando assim
+     * qualquer sincronização no caminho de processamento de cada ficheiro. Quando todas as tarefas terminam os
+     * acumuladores são juntos num único resultado. Caso o timeout seja ultrapassado antes do fim da pesquisa é
+     * retornado null
+     * @param root o directório onde começa a pesquisa
+     * @param timeout o tempo máximo de espera pelo fim da pesquisa
+     * @return o resultado da pesquisa ou null caso tenha ocorrido timeout
+     * @throws IOException caso alguma das tarefas não consiga ler um directório ou ficheiro ou termine com uma
+     * RuntimeException, que fica como causa
+     * @throws InterruptedException
+     */
+    public SearchResult search(Path root, int timeout) throws IOException, InterruptedException {
+        if (!Files.isDirectory(root))
+            throw new IOException(root + " is not a directory");
+
+        Search search = new Search();
+        search.submit(() -> search.processDirectory(root));
+        if (!search.awaitCompletion(timeout))
+            return null;
+
+        IOException error = search.error.get();
+        if (error != null)
+            throw error;
+        return search.merge();
+    }
+
+    /**
+     * Estado de uma pesquisa. O número de tarefas pendentes é mantido num contador atómico, sendo a thread que
+     * termina a última tarefa responsável por acordar quem está à espera do fim da pesquisa
+     */
+    private class Search {
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicReference<IOException> error = new AtomicReference<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition done = lock.newCondition();
+        private final List<Partial> partials = new ArrayList<>();
+        private final ThreadLocal<Partial> partial = ThreadLocal.withInitial(this::newPartial);
+
+        /**
+         * Cria o acumulador da thread actual e regista-o para ser junto no fim da pesquisa. Só é chamado uma vez por
+         * thread, pelo que é o único ponto onde é necessário adquirir o lock
+         */
+        private Partial newPartial() {
+            Partial p = new Partial(numberOfFilesToPresent);
+            lock.lock();
+            try {
+                partials.add(p);
+            } finally {
+                lock.unlock();
+            }
+            return p;
+        }
+
+        /**
+         * Tenta entregar a tarefa a uma thread do ThreadPool sem esperar (timeout 0). Caso o ThreadPool esteja cheio
+         * a tarefa é executada pela própria thread que a submeteu, o que limita o crescimento da fila de trabalho e
+         * impede que as threads do ThreadPool fiquem bloqueadas à espera umas das outras
+         */
+        private void submit(Task task) throws InterruptedException {
+            pending.incrementAndGet();
+            Runnable command = () -> run(task);
+            if (error.get() != null || !threadPool.execute(command, 0))
+                command.run();
+        }
+
+        private void run(Task task) {
+            try {
+                if (error.get() == null)
+                    task.run();
+            } catch (IOException e) {
+                error.compareAndSet(null, e);
+            } catch (InterruptedException e) {
+                error.compareAndSet(null, new IOException("search interrupted", e));
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // por exemplo DirectoryIteratorException; não pode chegar à thread do ThreadPool, que terminaria
+                error.compareAndSet(null, new IOException("search failed", e));
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    lock.lock();
+                    try {
+                        done.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        }
+
+        private void processDirectory(Path directory) throws IOException, InterruptedException {
+            partial.get().directories++;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))
+                        submit(() -> processDirectory(entry));
+                    else if (Files.isRegularFile(entry))
+                        submit(() -> processFile(entry));
+                }
+            }
+        }
+
+        private void processFile(Path file) throws IOException {
+            byte[] content = Files.readAllBytes(file);
+            Partial p = partial.get();
+            p.addFile(file, content.length);
+            p.addWords(new String(content, StandardCharsets.UTF_8));
+        }
+
+        private boolean awaitCompletion(int timeout) throws InterruptedException {
+            lock.lock();
+            try {
+                if (pending.get() == 0)
+                    return true;
+                if (Timeouts.noWait(timeout))
+                    return false;
+
+                long t = Timeouts.start(timeout);
+                long remaining = Timeouts.remaining(t);
+                while (true) {
+                    done.await(remaining, TimeUnit.MILLISECONDS);
+                    if (pending.get() == 0)
+                        return true;
+                    remaining = Timeouts.remaining(t);
+                    if (Timeouts.isTimeout(remaining))
+                        return false;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private SearchResult merge() {
+            lock.lock();
+            try {
+                Partial result = new Partial(numberOfFilesToPresent);
+                for (Partial p : partials)
+                    result.merge(p);
+                return new SearchResult(result);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Acumulador usado por uma única thread, não sendo por isso necessária qualquer sincronização no seu acesso.
+     * Os maiores ficheiros são mantidos num min-heap de dimensão máxima numberOfFilesToPresent
+     */
+    private static class Partial {
+        private final int capacity;
+        private final PriorityQueue<FileEntry> biggestFiles;
+        private final HashMap<String, Long> wordCounts = new HashMap<>();
+        private long files, directories, words;
+
+        private Partial(int capacity) {
+            this.capacity = capacity;
+            biggestFiles = new PriorityQueue<>(capacity + 1, Comparator.comparingLong(FileEntry::getSize));
+        }
+
+        private void addFile(Path file, long size) {
+            files++;
+            offer(new FileEntry(file, size));
+        }
+
+        private void offer(FileEntry entry) {
+            if (biggestFiles.size() < capacity) {
+                biggestFiles.add(entry);
+            } else if (biggestFiles.peek().getSize() < entry.getSize()) {
+                biggestFiles.poll();
+                biggestFiles.add(entry);
+            }
+        }
+
+        /**
+         * Separa o texto em palavras, considerando como palavra qualquer sequência de letras ou dígitos
+         */
+        private void addWords(String text) {
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (letter && start < 0) {
+                    start = i;
+                } else if (!letter && start >= 0) {
+                    words++;
+                    wordCounts.merge(text.substring(start, i).toLowerCase(), 1L, Long::sum);
+                    start = -1;
+                }
+            }
+        }
+
+        private void merge(Partial other) {
+            files += other.files;
+            directories += other.directories;
+            words += other.words;
+            for (FileEntry entry : other.biggestFiles)
+                offer(entry);
+            for (Map.Entry<String, Long> entry : other.wordCounts.entrySet())
+                wordCounts.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+    }
+
+    /**
+     * Classe para representar um ficheiro encontrado e o seu tamanho em bytes
+     */
+    public static class FileEntry {
+        private final Path path;
+        private final long size;
+
+        private FileEntry(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return path + " (" + size + " bytes)";
+        }
+    }
+
+    /**
+     * Resultado de uma pesquisa, já com os acumuladores de todas as threads juntos
+     */
+    public static class SearchResult {
+        private final List<FileEntry> biggestFiles;
+        private final Map<String, Long> wordCounts;
+        private final long files, directories, words;
+
+        private SearchResult(Partial partial) {
+            List<FileEntry> biggest = new ArrayList<>(partial.biggestFiles);
+            biggest.sort(Comparator.comparingLong(FileEntry::getSize).reversed());
+            biggestFiles = Collections.unmodifiableList(biggest);
+            wordCounts = Collections.unmodifiableMap(partial.wordCounts);
+            files = partial.files;
+            directories = partial.directories;
+            words = partial.words;
+        }
+
+        /**
+         * @return os maiores ficheiros encontrados, por ordem decrescente de tamanho
+         */
+        public List<FileEntry> getBiggestFiles() {
+            return biggestFiles;
+        }
+
+        public long getFilesEncountered() {
+            return files;
+        }
+
+        public long getDirectoriesEncountered() {
+            return directories;
+        }
+
+        public long getTotalWords() {
+            return words;
+        }
+
+        /**
+         * @return o número de ocorrências de cada palavra, em minúsculas
+         */
+        public Map<String, Long> getWordCounts() {
+            return wordCounts;
+        }
+
+        /**
+         * @param n o número de palavras a apresentar
+         * @return as n palavras mais frequentes, por ordem decrescente de ocorrências
+         */
+        public List<Map.Entry<String, Long>> getMostFrequentWords(int n) {
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(wordCounts.entrySet());
+            entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            return entries.subList(0, Math.min(n, entries.size()));
+        }
+    }
+}
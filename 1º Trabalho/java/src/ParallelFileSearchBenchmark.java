@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark da pesquisa paralela de ficheiros. O corpus de teste (por omissão o directório testeDirectory do 3º
+ * trabalho) é replicado sinteticamente copies vezes num directório temporário, usando hard links sempre que possível
+ * para que seja viável chegar aos milhões de ficheiros sem ocupar espaço em disco. É depois medido o tempo de
+ * pesquisa para cada um dos tamanhos de ThreadPool indicados.
+ *
+ * Utilização: ParallelFileSearchBenchmark [corpus] [copies] [poolSizes separados por vírgulas]
+ */
+public class ParallelFileSearchBenchmark {
+    private static final int FILES_TO_PRESENT = 3;
+    private static final int KEEP_ALIVE_TIME = 1000;
+    private static final int SEARCH_TIMEOUT = 60 * 60 * 1000;
+
+    public static void main(String[] args) throws Exception {
+        Path corpus = Paths.get(args.length > 0 ? args[0] : "../../3º Trabalho/testeDirectory");
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String[] poolSizes = (args.length > 2 ? args[2] : "1,2,4,8,16,32").split(",");
+
+        Path root = Files.createTempDirectory("filesearch");
+        try {
+            long start = System.nanoTime();
+            long files = replicate(corpus, root, copies);
+            System.out.printf("--> corpus with %d files created in %d ms%n", files, (System.nanoTime() - start) / 1000000);
+
+            for (String poolSize : poolSizes) {
+                int threads = Integer.parseInt(poolSize.trim());
+                SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(threads, KEEP_ALIVE_TIME);
+                ParallelFileSearch fileSearch = new ParallelFileSearch(threadPool, FILES_TO_PRESENT);
+
+                start = System.nanoTime();
+                ParallelFileSearch.SearchResult result = fileSearch.search(root, SEARCH_TIMEOUT);
+                long elapsed = System.nanoTime() - start;
+
+                threadPool.shutdown();
+                threadPool.awaitTermination(KEEP_ALIVE_TIME * 2);
+
+                if (result == null) {
+                    System.out.printf("<-- threads: %2d, timeout%n", threads);
+                    continue;
+                }
+                System.out.printf("<-- threads: %2d, files: %d, directories: %d, words: %d, time: %d ms, %.0f files/s%n",
+                        threads, result.getFilesEncountered(), result.getDirectoriesEncountered(),
+                        result.getTotalWords(), elapsed / 1000000, result.getFilesEncountered() * 1e9 / elapsed);
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Cria copies réplicas do corpus dentro de target, agrupadas em directórios de 100 réplicas para que nenhum
+     * directório fique com demasiadas entradas
+     * @return o número de ficheiros criados
+     */
+    private static long replicate(Path corpus, Path target, int copies) throws IOException {
+        long files = 0;
+        for (int i = 0; i < copies; i++) {
+            Path copy = target.resolve("group" + (i / 100)).resolve("copy" + i);
+            files += copyTree(corpus, copy);
+        }
+        return files;
+    }
+
+    private static long copyTree(Path source, Path target) throws IOException {
+        long[] files = {0};
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path link = target.resolve(source.relativize(file).toString());
+                try {
+                    Files.createLink(link, file.toAbsolutePath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, link);
+                }
+                files[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files[0];
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    ;//ignored
+                }
+            });
+        }
+    }
+}
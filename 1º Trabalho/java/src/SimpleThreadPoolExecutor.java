@@ -41,6 +41,11 @@ public class SimpleThreadPoolExecutor {
                 throw new RejectedExecutionException();
 
             if(!threads.isEmpty()){
+                ThreadPoolEvents.TaskHandoff handoff = new ThreadPoolEvents.TaskHandoff();
+                if (handoff.isEnabled() && ThreadPoolEvents.sample()) {
+                    handoff.idleWorkers = threads.size();
+                    handoff.commit();
+                }
                 WorkerThread worker = threads.removeLast();
                 worker.setCommand(command);
                 worker.ready = true;
@@ -52,12 +57,24 @@ public class SimpleThreadPoolExecutor {
                 WorkerThread worker = new WorkerThread(command);
                 worker.start();
                 workingThreads++;
+                ThreadPoolEvents.WorkerStarted started = new ThreadPoolEvents.WorkerStarted();
+                if (started.isEnabled()) {
+                    started.workingThreads = workingThreads;
+                    started.commit();
+                }
                 return true;
             }
 
             WorkItem workItem = new WorkItem(command, lock.newCondition());
             work.add(workItem);
+            ThreadPoolEvents.TaskEnqueued enqueued = new ThreadPoolEvents.TaskEnqueued();
+            if (enqueued.isEnabled()) {
+                enqueued.queuedTasks = work.size();
+                enqueued.commit();
+            }
 
+            ThreadPoolEvents.TaskWait wait = new ThreadPoolEvents.TaskWait();
+            wait.begin();
             long t = Timeouts.start(timeout);
             long remaining = Timeouts.remaining(t);
             while (true){
@@ -66,18 +83,28 @@ public class SimpleThreadPoolExecutor {
                 }catch (InterruptedException e){
                     if (workItem.isExecuting) {
                         Thread.currentThread().interrupt();
+                        commitWait(wait, "executed");
                         return true;
                     }
                     work.remove(workItem);
+                    commitWait(wait, "interrupted");
                     throw e;
                 }
 
-                if (workItem.isExecuting)
+                if (workItem.isExecuting) {
+                    commitWait(wait, "executed");
                     return true;
+                }
 
                 remaining = Timeouts.remaining(t);
                 if (Timeouts.isTimeout(remaining)) {
                     work.remove(workItem);
+                    commitWait(wait, "timeout");
+                    ThreadPoolEvents.TaskTimeout taskTimeout = new ThreadPoolEvents.TaskTimeout();
+                    if (taskTimeout.isEnabled()) {
+                        taskTimeout.timeout = timeout;
+                        taskTimeout.commit();
+                    }
                     return false;
                 }
             }
@@ -86,6 +113,14 @@ public class SimpleThreadPoolExecutor {
         }
     }
 
+    private static void commitWait(ThreadPoolEvents.TaskWait wait, String outcome) {
+        wait.end();
+        if (wait.shouldCommit()) {
+            wait.outcome = outcome;
+            wait.commit();
+        }
+    }
+
     /**
      * O ThreadPool é colocado em modo shutdown e caso já exista algumas threads bloqueada à espera que o pool termine
      * estas são acordadas, uma vez que houve uma alteração do estado do pool
@@ -146,6 +181,18 @@ public class SimpleThreadPoolExecutor {
         }
     }
 
+    /**
+     * Desconta uma thread que terminou e, caso tenha sido a última com o pool em shutdown, acorda as threads à espera
+     * da terminação. Só pode ser chamado com o lock adquirido
+     */
+    private void workerTerminated() {
+        workingThreads--;
+        if (workingThreads == 0 && isShuttingDown) {
+            waitingTerminationThreads = 0;
+            waitTermination.signalAll();
+        }
+    }
+
     /**
      * Classe para reprensentar o trabalho a ser realizado
      */
@@ -183,11 +230,33 @@ public class SimpleThreadPoolExecutor {
             ready = true;
         }
 
+        /**
+         * Executa os comandos enquanto encontrar trabalho. Caso um comando termine com uma excepção a thread termina,
+         * mas deixa de contar como thread a trabalhar, para que o awaitTermination não fique à espera dela
+         */
         @Override
         public void run() {
-            do{
-                command.run();
-            }while(findWork());
+            boolean working = true;
+            try {
+                do{
+                    ThreadPoolEvents.TaskRun run = new ThreadPoolEvents.TaskRun();
+                    boolean sampled = run.isEnabled() && ThreadPoolEvents.sample();
+                    if (sampled)
+                        run.begin();
+                    command.run();
+                    if (sampled)
+                        run.commit();
+                }while(working = findWork());
+            }finally {
+                if (working) {
+                    lock.lock();
+                    try {
+                        workerTerminated();
+                    }finally {
+                        lock.unlock();
+                    }
+                }
+            }
         }
 
         /**
@@ -209,16 +278,14 @@ public class SimpleThreadPoolExecutor {
                 }
 
                 if (isShuttingDown) {
-                    workingThreads--;
-                    if (workingThreads == 0 && isShuttingDown) {
-                        waitingTerminationThreads = 0;
-                        waitTermination.signalAll();
-                    }
+                    workerTerminated();
                     return false;
                 }
 
                 ready = false;
                 threads.add(this);
+                ThreadPoolEvents.WorkerIdle idle = new ThreadPoolEvents.WorkerIdle();
+                idle.begin();
                 long time = Timeouts.start(timeLiving);
                 long remaining = Timeouts.remaining(time);
                 while (true){
@@ -228,16 +295,14 @@ public class SimpleThreadPoolExecutor {
                         ;//ignored
                     }
                     if (ready) {
+                        commitIdle(idle, "work");
                         return true;
                     }
                     remaining = Timeouts.remaining(time);
                     if (Timeouts.isTimeout(remaining)){
-                        workingThreads--;
                         threads.remove(this);
-                        if (workingThreads == 0 && isShuttingDown) {
-                            waitingTerminationThreads = 0;
-                            waitTermination.signalAll();
-                        }
+                        workerTerminated();
+                        commitIdle(idle, "timeout");
                         return false;
                     }
                 }
@@ -245,5 +310,13 @@ public class SimpleThreadPoolExecutor {
                 lock.unlock();
             }
         }
+
+        private void commitIdle(ThreadPoolEvents.WorkerIdle idle, String outcome) {
+            idle.end();
+            if (idle.shouldCommit()) {
+                idle.outcome = outcome;
+                idle.commit();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+import jdk.jfr.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Eventos JFR (Java Flight Recorder) do SimpleThreadPoolExecutor. Os eventos só têm custo quando existe uma gravação
+ * activa que os inclua: os eventos de duração têm um threshold por omissão, para que só sejam gravadas as esperas e
+ * execuções longas, e os eventos mais frequentes (entrega de trabalho e execução) estão desactivados por omissão e
+ * são amostrados, sendo gravado apenas um em cada SAMPLE_RATE (propriedade threadpool.jfr.sampleRate).
+ */
+public final class ThreadPoolEvents {
+    static final int SAMPLE_RATE = Math.max(1, Integer.getInteger("threadpool.jfr.sampleRate", 1));
+
+    private ThreadPoolEvents() {
+    }
+
+    /**
+     * @return true caso o evento actual deva ser gravado segundo a taxa de amostragem
+     */
+    static boolean sample() {
+        return SAMPLE_RATE == 1 || ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+    }
+
+    @Name("pc.threadpool.TaskHandoff")
+    @Label("Task Handoff")
+    @Description("Trabalho entregue directamente a uma thread à espera de trabalho")
+    @Category({"Concurrent Programming", "Thread Pool"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TaskHandoff extends Event {
+        @Label("Idle Workers")
+        int idleWorkers;
+    }
+
+    @Name("pc.threadpool.WorkerStarted")
+    @Label("Worker Started")
+    @Description("Criada uma nova thread para executar o trabalho")
+    @Category({"Concurrent Programming", "Thread Pool"})
+    @StackTrace(false)
+    static final class WorkerStarted extends Event {
+        @Label("Working Threads")
+        int workingThreads;
+    }
+
+    @Name("pc.threadpool.TaskEnqueued")
+    @Label("Task Enqueued")
+    @Description("Trabalho colocado na lista de espera por o ThreadPool estar cheio")
+    @Category({"Concurrent Programming", "Thread Pool"})
+    @StackTrace(false)
+    static final class TaskEnqueued extends Event {
+        @Label("Queued Tasks")
+        int queuedTasks;
+    }
+
+    @Name("pc.threadpool.TaskWait")
+    @Label("Task Wait")
+    @Description("Tempo que o execute esteve bloqueado à espera que uma thread pegasse no trabalho")
+    @Category({"Concurrent Programming", "Thread Pool"})
+    @Threshold("1 ms")
+    static final class TaskWait extends Event {
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("pc.threadpool.TaskTimeout")
+    @Label("Task Timeout")
+    @Description("Trabalho recusado por nenhuma thread ter ficado disponível dentro do timeout")
+    @Category({"Concurrent Programming", "Thread Pool"})
+    static final class TaskTimeout extends Event {
+        @Label("Timeout")
+        @Timespan(Timespan.MILLISECONDS)
+        long timeout;
+    }
+
+    @Name("pc.threadpool.TaskRun")
+    @Label("Task Run")
+    @Description("Execução de um trabalho por uma thread do ThreadPool")
+    @Category({"Concurrent Programming", "Thread Pool"})
+    @Enabled(false)
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class TaskRun extends Event {
+    }
+
+    @Name("pc.threadpool.WorkerIdle")
+    @Label("Worker Idle")
+    @Description("Tempo que uma thread esteve à espera de trabalho no findWork")
+    @Category({"Concurrent Programming", "Thread Pool"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class WorkerIdle extends Event {
+        @Label("Outcome")
+        String outcome;
+    }
+}
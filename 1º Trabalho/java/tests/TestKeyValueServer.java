@@ -0,0 +1,157 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public class TestKeyValueServer {
+    private SimpleThreadPoolExecutor threadPool;
+    private KeyValueServer server;
+    private Thread serverThread;
+
+    @Before
+    public void startServer() throws IOException {
+        threadPool = new SimpleThreadPoolExecutor(2, 500);
+        server = new KeyValueServer(new InetSocketAddress("localhost", 0), threadPool);
+        serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void stopServer() throws InterruptedException {
+        server.shutdown();
+        serverThread.join(1000);
+        threadPool.shutdown();
+        Assert.assertTrue(threadPool.awaitTermination(1000));
+    }
+
+    @Test
+    /**
+     * Testa os comandos SET, GET e KEYS sobre uma única ligação
+     */
+    public void setAndGet() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader input = reader(socket);
+            OutputStream output = socket.getOutputStream();
+
+            send(output, "GET isel\n");
+            Assert.assertEquals("(nil)", input.readLine());
+
+            send(output, "SET isel pc\n");
+            Assert.assertEquals("OK", input.readLine());
+
+            send(output, "GET isel\n");
+            Assert.assertEquals("\"pc\"", input.readLine());
+
+            send(output, "KEYS\n");
+            Assert.assertEquals("1) \"isel\"", input.readLine());
+            Assert.assertEquals("", input.readLine());
+
+            send(output, "UNKNOWN\n");
+            Assert.assertTrue(input.readLine().startsWith("ERROR"));
+        }
+    }
+
+    @Test
+    /**
+     * Verifica se as respostas a pedidos enviados em pipeline, e partidos em várias escritas, chegam pela ordem dos
+     * pedidos mesmo sendo processados pelo ThreadPool
+     */
+    public void pipelinedRequestsKeepOrder() throws IOException {
+        int requests = 500;
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader input = reader(socket);
+            OutputStream output = socket.getOutputStream();
+
+            StringBuilder request = new StringBuilder();
+            for (int i = 0; i < requests; i++)
+                request.append("SET key ").append(i).append("\nGET key\n");
+            byte[] bytes = request.toString().getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < bytes.length; i += 7) {
+                output.write(bytes, i, Math.min(7, bytes.length - i));
+                output.flush();
+            }
+
+            for (int i = 0; i < requests; i++) {
+                Assert.assertEquals("OK", input.readLine());
+                Assert.assertEquals("\"" + i + "\"", input.readLine());
+            }
+        }
+    }
+
+    @Test
+    /**
+     * Verifica se várias ligações em simultâneo são servidas correctamente
+     */
+    public void multipleClients() throws InterruptedException {
+        int clients = 8;
+        boolean[] results = new boolean[clients];
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            int li = i;
+            threads[i] = new Thread(() -> {
+                try (Socket socket = new Socket("localhost", server.getPort())) {
+                    BufferedReader input = reader(socket);
+                    OutputStream output = socket.getOutputStream();
+                    boolean ok = true;
+                    for (int j = 0; j < 100; j++) {
+                        send(output, "SET client" + li + " " + j + "\nGET client" + li + "\n");
+                        ok &= "OK".equals(input.readLine());
+                        ok &= ("\"" + j + "\"").equals(input.readLine());
+                    }
+                    results[li] = ok;
+                } catch (IOException e) {
+                    results[li] = false;
+                }
+            });
+            threads[i].start();
+        }
+
+        for (int i = 0; i < clients; i++) {
+            threads[i].join();
+            Assert.assertTrue(results[i]);
+        }
+    }
+
+    @Test
+    /**
+     * Verifica se, com o ThreadPool encerrado, a ligação com comandos por processar é fechada e o selector continua
+     * a correr, em vez de terminar com a RejectedExecutionException
+     */
+    public void rejectedDispatchClosesConnection() throws IOException, InterruptedException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader input = reader(socket);
+            send(socket.getOutputStream(), "SET isel pc\n");
+            Assert.assertEquals("OK", input.readLine());
+
+            threadPool.shutdown();
+            Assert.assertTrue(threadPool.awaitTermination(1000));
+            send(socket.getOutputStream(), "GET isel\n");
+            Assert.assertNull(input.readLine());
+        }
+        Thread.sleep(50);
+        Assert.assertTrue(serverThread.isAlive());
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static void send(OutputStream output, String request) throws IOException {
+        output.write(request.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+}
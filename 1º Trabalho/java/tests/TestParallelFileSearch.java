@@ -0,0 +1,107 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestParallelFileSearch {
+    @Test
+    /**
+     * Testa se a pesquisa encontra todos os ficheiros de uma árvore de directórios, os maiores ficheiros por ordem
+     * decrescente de tamanho e o número correcto de palavras
+     */
+    public void searchFindsBiggestFilesAndWords() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("search");
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(4, 500);
+        try {
+            write(root.resolve("first.txt"), "Era uma vez");
+            write(root.resolve("SubDir1/second.txt"), "Era. Era... uma carochinha");
+            write(root.resolve("SubDir1/SubSub1/third.txt"), "Era uma vez uma carochinha muito pretinha e luzidia");
+            write(root.resolve("SubDir2/fourth.txt"), "vez");
+
+            ParallelFileSearch fileSearch = new ParallelFileSearch(threadPool, 2);
+            ParallelFileSearch.SearchResult result = fileSearch.search(root, 5000);
+
+            Assert.assertNotNull(result);
+            Assert.assertEquals(4, result.getFilesEncountered());
+            Assert.assertEquals(4, result.getDirectoriesEncountered());
+            Assert.assertEquals(17, result.getTotalWords());
+            Assert.assertEquals(Long.valueOf(4), result.getWordCounts().get("era"));
+            Assert.assertEquals(Long.valueOf(4), result.getWordCounts().get("uma"));
+
+            List<ParallelFileSearch.FileEntry> biggest = result.getBiggestFiles();
+            Assert.assertEquals(2, biggest.size());
+            Assert.assertEquals("third.txt", biggest.get(0).getPath().getFileName().toString());
+            Assert.assertEquals("second.txt", biggest.get(1).getPath().getFileName().toString());
+        } finally {
+            threadPool.shutdown();
+            Assert.assertTrue(threadPool.awaitTermination(1000));
+            delete(root);
+        }
+    }
+
+    @Test
+    /**
+     * Verifica se a pesquisa termina mesmo quando o ThreadPool tem uma única thread, sendo nesse caso as tarefas que
+     * não podem ser entregues ao ThreadPool executadas pela thread que as submete
+     */
+    public void searchWithSingleThreadPool() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("search");
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(1, 500);
+        try {
+            for (int i = 0; i < 20; i++)
+                write(root.resolve("dir" + (i % 5)).resolve("file" + i + ".txt"), "word " + i);
+
+            ParallelFileSearch.SearchResult result = new ParallelFileSearch(threadPool, 3).search(root, 5000);
+
+            Assert.assertNotNull(result);
+            Assert.assertEquals(20, result.getFilesEncountered());
+            Assert.assertEquals(40, result.getTotalWords());
+            Assert.assertEquals(Long.valueOf(20), result.getWordCounts().get("word"));
+        } finally {
+            threadPool.shutdown();
+            Assert.assertTrue(threadPool.awaitTermination(1000));
+            delete(root);
+        }
+    }
+
+    @Test
+    /**
+     * Verifica se uma ligação simbólica para um directório ascendente não é seguida, terminando a pesquisa
+     */
+    public void searchDoesNotFollowDirectoryLinks() throws IOException, InterruptedException {
+        Path root = Files.createTempDirectory("search");
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(2, 500);
+        try {
+            write(root.resolve("dir/file.txt"), "Era uma vez");
+            Files.createSymbolicLink(root.resolve("dir/loop"), root);
+
+            ParallelFileSearch.SearchResult result = new ParallelFileSearch(threadPool, 1).search(root, 5000);
+
+            Assert.assertNotNull(result);
+            Assert.assertEquals(1, result.getFilesEncountered());
+            Assert.assertEquals(2, result.getDirectoriesEncountered());
+            Assert.assertEquals(3, result.getTotalWords());
+        } finally {
+            threadPool.shutdown();
+            Assert.assertTrue(threadPool.awaitTermination(1000));
+            delete(root);
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -192,4 +192,20 @@ public class TestSimpleThreadPoolExecutor {
         Assert.assertEquals(text, result[0]);
         Assert.assertEquals(interrupted, result[1]);
     }
-}
\ No newline at end of file
+
+    @Test
+    /**
+     * Testa se uma thread cujo comando termina com uma excepção deixa de contar como thread a trabalhar, para que o
+     * awaitTermination retorne true depois do shutdown
+     */
+    public void failingCommandDoesNotBlockTermination() throws InterruptedException {
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(2, 500);
+        Assert.assertTrue(threadPool.execute(() -> {
+            throw new IllegalStateException("command failed");
+        }, 500));
+        Thread.sleep(50);
+
+        threadPool.shutdown();
+        Assert.assertTrue(threadPool.awaitTermination(1000));
+    }
+}
@@ -0,0 +1,51 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestThreadPoolEvents {
+    @Test
+    /**
+     * Verifica se, com uma gravação JFR activa, são gravados os eventos de criação de thread, de espera e de timeout
+     * quando um trabalho não consegue ser entregue a nenhuma thread
+     */
+    public void timeoutIsRecorded() throws IOException, InterruptedException {
+        AtomicBoolean termination = new AtomicBoolean(false);
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(1, 100);
+        Path file = Files.createTempFile("threadpool", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("pc.threadpool.WorkerStarted");
+            recording.enable("pc.threadpool.TaskWait").withThreshold(Duration.ZERO);
+            recording.enable("pc.threadpool.TaskTimeout");
+            recording.start();
+
+            Assert.assertTrue(threadPool.execute(() -> {
+                while (!termination.get());
+            }, 100));
+            Assert.assertFalse(threadPool.execute(() -> {}, 50));
+            termination.set(true);
+
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Assert.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("pc.threadpool.WorkerStarted")));
+            Assert.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("pc.threadpool.TaskWait")
+                    && e.getString("outcome").equals("timeout")));
+            Assert.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("pc.threadpool.TaskTimeout")
+                    && e.getLong("timeout") == 50));
+        } finally {
+            Files.deleteIfExists(file);
+            threadPool.shutdown();
+            Assert.assertTrue(threadPool.awaitTermination(500));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Base das filas ligadas especializadas (SpscQueue, MpscQueue e SpmcQueue): o nó, com o next acedido através de um
+ * VarHandle para permitir escritas release e leituras acquire, e o dequeue sobre uma WaitStrategy, comum a todas.
+ * As subclasses implementam put, tryTake e isEmpty usando a sincronização mínima para a sua cardinalidade.
+ */
+abstract class AbstractLinkedQueue<T> implements SimpleQueue<T> {
+    static final class Node<T> {
+        T value;
+        volatile Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    static final VarHandle NEXT;
+
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    AbstractLinkedQueue(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Deve ser chamado pelas subclasses depois de cada elemento ficar visível aos consumidores
+     */
+    final void signal() {
+        waitStrategy.signal();
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
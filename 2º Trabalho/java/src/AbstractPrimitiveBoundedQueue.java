@@ -0,0 +1,147 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Base da BoundedLongConcurrentQueue e da BoundedIntConcurrentQueue: os números de sequência por posição e os índices
+ * de produtores e consumidores da BoundedConcurrentQueue. A base reserva e liberta as posições; as subclasses só
+ * escrevem e lêem o valor da posição reservada no seu array primitivo, pelo que o algoritmo existe uma única vez sem
+ * que os valores passem por boxing.
+ */
+abstract class AbstractPrimitiveBoundedQueue {
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] sequences;
+    private final int mask;
+    private final PaddedAtomicLong enqueuePos = new PaddedAtomicLong(0);
+    private final PaddedAtomicLong dequeuePos = new PaddedAtomicLong(0);
+    private final WaitStrategy notEmptyStrategy, notFullStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+    private final BooleanSupplier notFull = () -> !isFull();
+
+    /**
+     * @param capacity o número máximo de elementos, arredondado para a potência de 2 seguinte (no mínimo 2)
+     * @param notEmptyStrategy a estratégia usada pelos consumidores para esperar que a fila tenha elementos
+     * @param notFullStrategy a estratégia usada pelos produtores para esperar que a fila tenha espaço
+     */
+    AbstractPrimitiveBoundedQueue(int capacity, WaitStrategy notEmptyStrategy, WaitStrategy notFullStrategy) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        sequences = new long[size];
+        for (int i = 0; i < size; i++)
+            sequences[i] = i;
+        mask = size - 1;
+        this.notEmptyStrategy = notEmptyStrategy;
+        this.notFullStrategy = notFullStrategy;
+        VarHandle.releaseFence();
+    }
+
+    public int capacity() {
+        return sequences.length;
+    }
+
+    final int index(long pos) {
+        return (int) pos & mask;
+    }
+
+    /**
+     * Reserva a posição seguinte dos produtores, como o offer da BoundedConcurrentQueue
+     * @return a posição reservada, ou -1 caso a fila esteja cheia
+     */
+    final long claimEnqueue() {
+        long pos = enqueuePos.get();
+        while (true) {
+            long dif = (long) SEQUENCE.getAcquire(sequences, index(pos)) - pos;
+            if (dif == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1))
+                    return pos;
+                pos = enqueuePos.get();
+            } else if (dif < 0) {
+                return -1;
+            } else {
+                pos = enqueuePos.get();
+            }
+        }
+    }
+
+    /**
+     * Torna visível aos consumidores o valor escrito na posição reservada pelo claimEnqueue
+     */
+    final void publishEnqueue(long pos) {
+        SEQUENCE.setRelease(sequences, index(pos), pos + 1);
+        notEmptyStrategy.signal();
+    }
+
+    /**
+     * Reserva a posição seguinte dos consumidores
+     * @return a posição reservada, ou -1 caso a fila esteja vazia
+     */
+    final long claimDequeue() {
+        long pos = dequeuePos.get();
+        while (true) {
+            long dif = (long) SEQUENCE.getAcquire(sequences, index(pos)) - (pos + 1);
+            if (dif == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1))
+                    return pos;
+                pos = dequeuePos.get();
+            } else if (dif < 0) {
+                return -1;
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+    }
+
+    /**
+     * Reserva a posição seguinte dos consumidores, esperando enquanto a fila estiver vazia
+     * @return a posição reservada
+     * @throws InterruptedException
+     */
+    final long awaitDequeue() throws InterruptedException {
+        while (true) {
+            long pos = dequeuePos.get();
+            long dif = (long) SEQUENCE.getAcquire(sequences, index(pos)) - (pos + 1);
+            if (dif < 0)
+                notEmptyStrategy.await(notEmpty, Long.MAX_VALUE);
+            else if (dif == 0 && dequeuePos.compareAndSet(pos, pos + 1))
+                return pos;
+        }
+    }
+
+    /**
+     * Devolve aos produtores a posição reservada pelo claimDequeue ou awaitDequeue, depois de lido o valor
+     */
+    final void releaseDequeue(long pos) {
+        SEQUENCE.setRelease(sequences, index(pos), pos + mask + 1);
+        notFullStrategy.signal();
+    }
+
+    /**
+     * @param deadline o instante, em System.nanoTime, até ao qual se espera
+     * @return false caso a fila continue cheia no deadline
+     * @throws InterruptedException
+     */
+    final boolean awaitNotFull(long deadline) throws InterruptedException {
+        return notFullStrategy.await(notFull, deadline);
+    }
+
+    /**
+     * @param deadline o instante, em System.nanoTime, até ao qual se espera
+     * @return false caso a fila continue vazia no deadline
+     * @throws InterruptedException
+     */
+    final boolean awaitNotEmpty(long deadline) throws InterruptedException {
+        return notEmptyStrategy.await(notEmpty, deadline);
+    }
+
+    public boolean isEmpty() {
+        long pos = dequeuePos.get();
+        return (long) SEQUENCE.getAcquire(sequences, index(pos)) - (pos + 1) < 0;
+    }
+
+    public boolean isFull() {
+        long pos = enqueuePos.get();
+        return (long) SEQUENCE.getAcquire(sequences, index(pos)) - pos < 0;
+    }
+}
@@ -0,0 +1,112 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Base da LongConcurrentQueue e da IntConcurrentQueue: o algoritmo da ConcurrentQueue sobre nós sem valor, de que
+ * cada subclasse deriva um nó com o valor primitivo. As subclasses só criam os nós e lêem o valor do nó retirado,
+ * pelo que o algoritmo existe uma única vez sem que os valores passem por boxing.
+ */
+abstract class AbstractPrimitiveLinkedQueue {
+    static class Node {
+        volatile Node next;
+    }
+
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String name = getClass().getSimpleName();    // usado nos eventos de contenção
+    private final PaddedAtomicReference<Node> head, tail;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    AbstractPrimitiveLinkedQueue(WaitStrategy waitStrategy, Node dummy) {
+        this.waitStrategy = waitStrategy;
+        head = new PaddedAtomicReference<>(dummy);
+        tail = new PaddedAtomicReference<>(dummy);
+    }
+
+    /**
+     * Igual ao put da ConcurrentQueue
+     * @param node o nó com o valor a colocar
+     */
+    final void link(Node node) {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Node observedNode = tail.get();
+            Node observedNodeNext = observedNode.next;
+
+            if (observedNode == tail.get()) {
+                if (observedNodeNext != null) {
+                    tail.compareAndSet(observedNode, observedNodeNext);
+                } else if (NEXT.compareAndSet(observedNode, (Node) null, node)) {
+                    tail.compareAndSet(observedNode, node);
+                    if (attempts > 1)
+                        QueueEvents.contention(name, "put", attempts - 1, firstRetry);
+                    waitStrategy.signal();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tenta retirar o primeiro nó da fila sem esperar
+     * @return o nó com o valor retirado, que passa a ser o sentinela, ou null caso a fila esteja vazia
+     */
+    final Node unlink() {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Node observedHead = head.get();
+            Node node = observedHead.next;
+            if (node == null)
+                return null;
+            if (head.compareAndSet(observedHead, node)) {
+                if (attempts > 1)
+                    QueueEvents.contention(name, "tryTake", attempts - 1, firstRetry);
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Retira o primeiro nó da fila, esperando segundo a estratégia de espera enquanto a fila estiver vazia
+     * @throws InterruptedException
+     */
+    final Node awaitUnlink() throws InterruptedException {
+        while (true) {
+            Node observedHead = head.get();
+            Node node = observedHead.next;
+            if (node == null)
+                waitStrategy.await(notEmpty, Long.MAX_VALUE);
+            else if (head.compareAndSet(observedHead, node))
+                return node;
+        }
+    }
+
+    /**
+     * @param deadline o instante, em System.nanoTime, até ao qual se espera
+     * @return false caso a fila continue vazia no deadline
+     * @throws InterruptedException
+     */
+    final boolean awaitNotEmpty(long deadline) throws InterruptedException {
+        return waitStrategy.await(notEmpty, deadline);
+    }
+
+    public boolean isEmpty() {
+        return head.get().next == null;
+    }
+}
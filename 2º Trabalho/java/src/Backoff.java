@@ -0,0 +1,114 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Gestão de contenção dos ciclos de CAS das filas. Depois de um compareAndSet falhar a thread espera um número
+ * aleatório de iterações de spin antes de voltar a tentar, em vez de voltar a disputar imediatamente a mesma linha
+ * de cache com as threads que acabaram de ganhar. Os limites de espera são em iterações de Thread.onSpinWait.
+ */
+public interface Backoff {
+    /**
+     * Chamado depois de um compareAndSet falhado
+     * @param failures o número de falhas consecutivas da operação actual, a começar em 1
+     */
+    void failed(int failures);
+
+    /**
+     * Chamado quando a operação termina
+     * @param failures o número de compareAndSet que falharam durante a operação
+     */
+    default void succeeded(int failures) {
+    }
+
+    /**
+     * @return uma estratégia que volta a tentar imediatamente, o comportamento original das filas
+     */
+    static Backoff none() {
+        return None.INSTANCE;
+    }
+
+    /**
+     * @param minSpins o limite da espera depois da primeira falha
+     * @param maxSpins o limite máximo da espera
+     * @return uma estratégia em que o limite da espera aleatória duplica a cada falha consecutiva
+     */
+    static Backoff exponential(int minSpins, int maxSpins) {
+        return new Exponential(minSpins, maxSpins);
+    }
+
+    /**
+     * @param minSpins o menor limite inicial da espera
+     * @param maxSpins o limite máximo da espera
+     * @return uma estratégia exponencial cujo limite inicial se adapta à taxa de falhas observada na fila
+     */
+    static Backoff adaptive(int minSpins, int maxSpins) {
+        return new Adaptive(minSpins, maxSpins);
+    }
+
+    static void spin(int bound) {
+        for (int i = ThreadLocalRandom.current().nextInt(bound) + 1; i > 0; i--)
+            Thread.onSpinWait();
+    }
+
+    final class None implements Backoff {
+        static final None INSTANCE = new None();
+
+        @Override
+        public void failed(int failures) {
+        }
+    }
+
+    class Exponential implements Backoff {
+        final int minSpins, maxSpins;
+
+        Exponential(int minSpins, int maxSpins) {
+            if (minSpins <= 0 || maxSpins < minSpins)
+                throw new IllegalArgumentException("0 < minSpins <= maxSpins");
+            this.minSpins = minSpins;
+            this.maxSpins = maxSpins;
+        }
+
+        int limit(int start, int failures) {
+            return (int) Math.min(maxSpins, (long) start << Math.min(failures - 1, 30));
+        }
+
+        @Override
+        public void failed(int failures) {
+            spin(limit(minSpins, failures));
+        }
+    }
+
+    /**
+     * O limite inicial (ceiling) é partilhado por todas as threads da fila: duplica sempre que uma operação precisa de
+     * mais do que uma repetição e diminui 1/16 quando uma operação termina sem falhas. Para que o próprio ceiling não
+     * passe a ser uma linha de cache disputada, é lido e escrito sem sincronização (uma actualização perdida só atrasa
+     * a adaptação) e as operações sem falhas só o diminuem uma vez em cada 16, e só quando está acima do mínimo.
+     */
+    class Adaptive extends Exponential {
+        private int ceiling;
+
+        Adaptive(int minSpins, int maxSpins) {
+            super(minSpins, maxSpins);
+            ceiling = minSpins;
+        }
+
+        @Override
+        public void failed(int failures) {
+            spin(limit(ceiling, failures));
+        }
+
+        @Override
+        public void succeeded(int failures) {
+            int current = ceiling;
+            if (failures > 1) {
+                if (current < maxSpins)
+                    ceiling = Math.min(maxSpins, current * 2);
+            } else if (failures == 0 && current > minSpins && (ThreadLocalRandom.current().nextInt() & 15) == 0) {
+                ceiling = Math.max(minSpins, current - Math.max(1, current >> 4));
+            }
+        }
+
+        int ceiling() {
+            return ceiling;
+        }
+    }
+}
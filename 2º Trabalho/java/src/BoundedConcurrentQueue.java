@@ -0,0 +1,194 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fila MPMC limitada sobre um array pré-alocado, segundo o algoritmo de Dmitry Vyukov (bounded MPMC queue). Cada
+ * posição do array tem um número de sequência que indica se a posição está livre para o produtor da volta actual ou
+ * preenchida para o consumidor da volta actual, pelo que produtores e consumidores só disputam os índices
+ * enqueuePos e dequeuePos e nunca alocam memória.
+ */
+public class BoundedConcurrentQueue<T> implements SimpleQueue<T> {
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Object[] buffer;
+    private final long[] sequences;
+    private final int mask;
+    private final PaddedAtomicLong enqueuePos = new PaddedAtomicLong(0);
+    private final PaddedAtomicLong dequeuePos = new PaddedAtomicLong(0);
+    private final WaitStrategy notEmptyStrategy, notFullStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+    private final BooleanSupplier notFull = () -> !isFull();
+
+    /**
+     * @param capacity o número máximo de elementos, arredondado para a potência de 2 seguinte (no mínimo 2)
+     */
+    public BoundedConcurrentQueue(int capacity) {
+        this(capacity, WaitStrategy.yielding(), WaitStrategy.yielding());
+    }
+
+    /**
+     * @param capacity o número máximo de elementos, arredondado para a potência de 2 seguinte (no mínimo 2)
+     * @param notEmptyStrategy a estratégia usada pelos consumidores para esperar que a fila tenha elementos
+     * @param notFullStrategy a estratégia usada pelos produtores para esperar que a fila tenha espaço
+     */
+    public BoundedConcurrentQueue(int capacity, WaitStrategy notEmptyStrategy, WaitStrategy notFullStrategy) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);    // com uma só posição a sequência publicada e a livre coincidiam
+        buffer = new Object[size];
+        sequences = new long[size];
+        for (int i = 0; i < size; i++)
+            sequences[i] = i;
+        mask = size - 1;
+        this.notEmptyStrategy = notEmptyStrategy;
+        this.notFullStrategy = notFullStrategy;
+        VarHandle.releaseFence();
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Tenta colocar o elemento na fila sem esperar. A posição enqueuePos está livre para este produtor quando o seu
+     * número de sequência é igual a enqueuePos; nesse caso o produtor reserva-a com um CAS sobre enqueuePos, escreve o
+     * elemento e publica-o colocando a sequência a enqueuePos + 1. Caso a sequência seja inferior a posição ainda
+     * tem o elemento da volta anterior, ou seja, a fila está cheia
+     * @param elem
+     * @return true caso o elemento tenha sido colocado, false caso a fila esteja cheia
+     */
+    public boolean offer(T elem) {
+        if (elem == null)
+            throw new NullPointerException();
+        long pos = enqueuePos.get();
+        int index;
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            index = (int) pos & mask;
+            long dif = (long) SEQUENCE.getAcquire(sequences, index) - pos;
+            if (dif == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1))
+                    break;
+                pos = enqueuePos.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = enqueuePos.get();
+            }
+        }
+        if (attempts > 1)
+            QueueEvents.contention("BoundedConcurrentQueue", "offer", attempts - 1, firstRetry);
+        buffer[index] = elem;
+        SEQUENCE.setRelease(sequences, index, pos + 1);
+        notEmptyStrategy.signal();
+        return true;
+    }
+
+    /**
+     * Igual ao offer, mas caso a fila esteja cheia espera por espaço até passar o timeout
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return true caso o elemento tenha sido colocado, false caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public boolean offer(T elem, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!offer(elem)) {
+            if (!notFullStrategy.await(notFull, deadline))
+                return offer(elem);
+        }
+        return true;
+    }
+
+    /**
+     * Coloca o elemento na fila, esperando por espaço caso a fila esteja cheia. Tal como o put da ConcurrentQueue não
+     * lança InterruptedException: uma interrupção durante a espera é guardada e reposta no fim
+     * @param elem
+     */
+    public void put(T elem) {
+        boolean interrupted = false;
+        while (!offer(elem)) {
+            try {
+                notFullStrategy.await(notFull, Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Tenta retirar um elemento sem esperar. A posição dequeuePos tem um elemento para este consumidor quando o seu
+     * número de sequência é dequeuePos + 1; depois de a reservar com um CAS sobre dequeuePos, o consumidor lê o
+     * elemento e liberta a posição para a volta seguinte colocando a sequência a dequeuePos + capacidade
+     * @return o elemento retirado ou null caso a fila esteja vazia
+     */
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        long pos = dequeuePos.get();
+        int index;
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            index = (int) pos & mask;
+            long dif = (long) SEQUENCE.getAcquire(sequences, index) - (pos + 1);
+            if (dif == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1))
+                    break;
+                pos = dequeuePos.get();
+            } else if (dif < 0) {
+                return null;
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+        if (attempts > 1)
+            QueueEvents.contention("BoundedConcurrentQueue", "tryTake", attempts - 1, firstRetry);
+        T elem = (T) buffer[index];
+        buffer[index] = null;
+        SEQUENCE.setRelease(sequences, index, pos + mask + 1);
+        notFullStrategy.signal();
+        return elem;
+    }
+
+    /**
+     * A fila está vazia quando a posição dequeuePos ainda não foi publicada por nenhum produtor
+     */
+    public boolean isEmpty() {
+        long pos = dequeuePos.get();
+        return (long) SEQUENCE.getAcquire(sequences, (int) pos & mask) - (pos + 1) < 0;
+    }
+
+    /**
+     * A fila está cheia quando a posição enqueuePos ainda tem o elemento da volta anterior
+     */
+    public boolean isFull() {
+        long pos = enqueuePos.get();
+        return (long) SEQUENCE.getAcquire(sequences, (int) pos & mask) - pos < 0;
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            notEmptyStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!notEmptyStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
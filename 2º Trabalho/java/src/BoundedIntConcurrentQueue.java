@@ -0,0 +1,111 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Versão da BoundedConcurrentQueue para valores int. Os valores são guardados num int[] pré-alocado, pelo que
+ * depois de criada a fila nenhuma operação aloca memória. Tal como na IntConcurrentQueue, o tryTake entrega o valor a
+ * um IntConsumer e retorna se existia algum elemento. A reserva das posições é feita pela
+ * AbstractPrimitiveBoundedQueue, partilhada com a BoundedLongConcurrentQueue.
+ */
+public class BoundedIntConcurrentQueue extends AbstractPrimitiveBoundedQueue {
+    private final int[] buffer;
+
+    public BoundedIntConcurrentQueue(int capacity) {
+        this(capacity, WaitStrategy.yielding(), WaitStrategy.yielding());
+    }
+
+    /**
+     * @param capacity o número máximo de elementos, arredondado para a potência de 2 seguinte (no mínimo 2)
+     * @param notEmptyStrategy a estratégia usada pelos consumidores para esperar que a fila tenha elementos
+     * @param notFullStrategy a estratégia usada pelos produtores para esperar que a fila tenha espaço
+     */
+    public BoundedIntConcurrentQueue(int capacity, WaitStrategy notEmptyStrategy, WaitStrategy notFullStrategy) {
+        super(capacity, notEmptyStrategy, notFullStrategy);
+        buffer = new int[capacity()];
+    }
+
+    /**
+     * Igual ao offer da BoundedConcurrentQueue
+     * @return true caso o valor tenha sido colocado, false caso a fila esteja cheia
+     */
+    public boolean offer(int value) {
+        long pos = claimEnqueue();
+        if (pos < 0)
+            return false;
+        buffer[index(pos)] = value;
+        publishEnqueue(pos);
+        return true;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera por espaço, em milissegundos
+     * @return true caso o valor tenha sido colocado, false caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public boolean offer(int value, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!offer(value)) {
+            if (!awaitNotFull(deadline))
+                return offer(value);
+        }
+        return true;
+    }
+
+    /**
+     * Coloca o valor na fila, esperando por espaço caso a fila esteja cheia. Uma interrupção durante a espera é
+     * guardada e reposta no fim
+     */
+    public void put(int value) {
+        boolean interrupted = false;
+        while (!offer(value)) {
+            try {
+                awaitNotFull(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @param action recebe o valor retirado, caso exista
+     * @return true caso tenha sido retirado um elemento, false caso a fila esteja vazia
+     */
+    public boolean tryTake(IntConsumer action) {
+        long pos = claimDequeue();
+        if (pos < 0)
+            return false;
+        int value = buffer[index(pos)];
+        releaseDequeue(pos);
+        action.accept(value);
+        return true;
+    }
+
+    /**
+     * Retira o primeiro elemento da fila, esperando enquanto a fila estiver vazia
+     * @return o valor retirado
+     * @throws InterruptedException
+     */
+    public int dequeue() throws InterruptedException {
+        long pos = awaitDequeue();
+        int value = buffer[index(pos)];
+        releaseDequeue(pos);
+        return value;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @param action recebe o valor retirado, caso exista
+     * @return true caso tenha sido retirado um elemento, false caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public boolean dequeue(long timeout, IntConsumer action) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!tryTake(action)) {
+            if (!awaitNotEmpty(deadline))
+                return tryTake(action);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,255 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fila de prioridades lock-free sobre uma skiplist, segundo a LockFreeSkipList de Herlihy e Shavit com a remoção do
+ * mínimo de Lotan e Shavit. A chave de cada nó é o par (prioridade, número de sequência), pelo que elementos com a
+ * mesma prioridade saem pela ordem de inserção e não há chaves repetidas. Os elementos são ordenados por prioridade
+ * crescente: o mínimo é o primeiro a sair.
+ *
+ * Retirar o mínimo é feito em dois passos: primeiro o consumidor reclama o primeiro nó ainda não reclamado do nível 0
+ * com um compareAndSet sobre o campo claimed (remoção lógica), e só depois marca as referências do nó em todos os
+ * níveis e o retira fisicamente da lista. No modo relaxado (SprayList de Alistarh, Kopinsky, Li e Shavit) o
+ * consumidor não começa no primeiro nó, mas num nó escolhido por um passeio aleatório pelos níveis superiores, que cai
+ * perto do início da lista; os consumidores ficam assim espalhados pelos primeiros O(p log p) nós em vez de disputarem
+ * todos o primeiro, ao custo de poderem retirar um elemento que não é exactamente o mínimo.
+ */
+public class ConcurrentPriorityQueue<T> {
+    private static final int MAX_LEVEL = 24;
+
+    private static final class Node<T> {
+        final long priority, sequence;
+        final T value;
+        final AtomicMarkableReference<Node<T>>[] next;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final int topLevel;
+
+        Node(long priority, long sequence, T value, int topLevel) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.value = value;
+            this.topLevel = topLevel;
+            next = newLinks(topLevel + 1);
+            for (int i = 0; i <= topLevel; i++)
+                next[i] = new AtomicMarkableReference<>(null, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> AtomicMarkableReference<Node<T>>[] newLinks(int length) {
+            return (AtomicMarkableReference<Node<T>>[]) new AtomicMarkableReference<?>[length];
+        }
+    }
+
+    private final Node<T> head = new Node<>(Long.MIN_VALUE, Long.MIN_VALUE, null, MAX_LEVEL);
+    private final Node<T> tail = new Node<>(Long.MAX_VALUE, Long.MAX_VALUE, null, MAX_LEVEL);
+    private final AtomicLong sequence = new AtomicLong();
+    private final boolean relaxed;
+    private final int sprayHeight, sprayJump;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    public ConcurrentPriorityQueue() {
+        this(WaitStrategy.yielding(), false);
+    }
+
+    /**
+     * @param waitStrategy a estratégia usada pelos consumidores no takeMin para esperar que a fila tenha elementos
+     * @param relaxed indica se o tryTakeMin usa o modo relaxado (SprayList) em vez de retirar sempre o mínimo
+     */
+    public ConcurrentPriorityQueue(WaitStrategy waitStrategy, boolean relaxed) {
+        this.waitStrategy = waitStrategy;
+        this.relaxed = relaxed;
+        for (int i = 0; i <= MAX_LEVEL; i++)
+            head.next[i].set(tail, false);
+        // o passeio começa no nível log p e avança até 1 + log p nós por nível, como na SprayList
+        int threads = Runtime.getRuntime().availableProcessors();
+        int log = 32 - Integer.numberOfLeadingZeros(Math.max(1, threads));
+        sprayHeight = Math.min(MAX_LEVEL, log);
+        sprayJump = log + 1;
+    }
+
+    private boolean before(Node<T> node, long priority, long sequence) {
+        if (node == head)
+            return true;
+        if (node == tail)
+            return false;
+        return node.priority < priority || node.priority == priority && node.sequence < sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newLevels() {
+        return (Node<T>[]) new Node<?>[MAX_LEVEL + 1];
+    }
+
+    private static int randomLevel() {
+        int level = Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL));
+        return Math.min(level, MAX_LEVEL);
+    }
+
+    /**
+     * Procura a posição da chave em todos os níveis, retirando fisicamente pelo caminho os nós marcados
+     * @return true caso exista um nó com a chave
+     */
+    private boolean find(long priority, long sequence, Node<T>[] preds, Node<T>[] succs) {
+        boolean[] marked = {false};
+        retry:
+        while (true) {
+            Node<T> pred = head, curr = null, succ;
+            for (int level = MAX_LEVEL; level >= 0; level--) {
+                curr = pred.next[level].getReference();
+                while (true) {
+                    succ = curr.next[level].get(marked);
+                    while (marked[0]) {
+                        if (!pred.next[level].compareAndSet(curr, succ, false, false))
+                            continue retry;
+                        curr = pred.next[level].getReference();
+                        succ = curr.next[level].get(marked);
+                    }
+                    if (before(curr, priority, sequence)) {
+                        pred = curr;
+                        curr = succ;
+                    } else {
+                        break;
+                    }
+                }
+                preds[level] = pred;
+                succs[level] = curr;
+            }
+            return curr != tail && curr.priority == priority && curr.sequence == sequence;
+        }
+    }
+
+    /**
+     * Insere o elemento com a prioridade dada. O nó fica visível quando é ligado no nível 0; os níveis superiores são
+     * ligados depois, servindo apenas para acelerar as pesquisas
+     * @param priority a prioridade, menor sai primeiro
+     * @param value
+     */
+    public void put(long priority, T value) {
+        if (value == null)
+            throw new NullPointerException();
+        long seq = sequence.getAndIncrement();
+        int topLevel = randomLevel();
+        Node<T>[] preds = newLevels(), succs = newLevels();
+        Node<T> node = new Node<>(priority, seq, value, topLevel);
+        while (true) {
+            find(priority, seq, preds, succs);
+            for (int level = 0; level <= topLevel; level++)
+                node.next[level].set(succs[level], false);
+            if (!preds[0].next[0].compareAndSet(succs[0], node, false, false))
+                continue;
+            for (int level = 1; level <= topLevel; level++) {
+                while (!preds[level].next[level].compareAndSet(succs[level], node, false, false)) {
+                    find(priority, seq, preds, succs);
+                    if (node.next[0].isMarked())
+                        break;    // o nó já foi retirado, não vale a pena ligar os restantes níveis
+                }
+                if (node.next[0].isMarked())
+                    break;
+            }
+            waitStrategy.signal();
+            return;
+        }
+    }
+
+    /**
+     * Retira o elemento de menor prioridade, ou, no modo relaxado, um dos elementos perto do início da fila
+     * @return o valor retirado ou null caso a fila esteja vazia
+     */
+    public T tryTakeMin() {
+        if (relaxed) {
+            Node<T> landed = spray();
+            if (landed != null) {
+                T value = claimFrom(landed);
+                if (value != null)
+                    return value;
+            }
+        }
+        return claimFrom(head.next[0].getReference());
+    }
+
+    /**
+     * Reclama o primeiro nó não reclamado a partir de node, pelo nível 0
+     */
+    private T claimFrom(Node<T> node) {
+        for (; node != tail; node = node.next[0].getReference()) {
+            if (!node.claimed.get() && node.claimed.compareAndSet(false, true)) {
+                unlink(node);
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Passeio aleatório da SprayList: em cada nível, a começar em sprayHeight, avança um número aleatório de nós e
+     * desce um nível
+     * @return o nó onde o passeio terminou, ou null caso não tenha saído da cabeça
+     */
+    private Node<T> spray() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Node<T> node = head;
+        for (int level = sprayHeight; level >= 0; level--) {
+            for (int jump = random.nextInt(sprayJump + 1); jump > 0; jump--) {
+                Node<T> next = node.next[level].getReference();
+                if (next == tail)
+                    break;
+                node = next;
+            }
+        }
+        return node == head ? null : node;
+    }
+
+    /**
+     * Marca as referências do nó, do nível de topo até ao nível 0, e usa o find para o retirar fisicamente da lista
+     */
+    private void unlink(Node<T> node) {
+        boolean[] marked = {false};
+        for (int level = node.topLevel; level >= 0; level--) {
+            Node<T> succ = node.next[level].get(marked);
+            while (!marked[0]) {
+                node.next[level].compareAndSet(succ, succ, false, true);
+                succ = node.next[level].get(marked);
+            }
+        }
+        find(node.priority, node.sequence, newLevels(), newLevels());
+    }
+
+    /**
+     * @return true caso todos os nós da lista já tenham sido reclamados
+     */
+    public boolean isEmpty() {
+        for (Node<T> node = head.next[0].getReference(); node != tail; node = node.next[0].getReference()) {
+            if (!node.claimed.get())
+                return false;
+        }
+        return true;
+    }
+
+    public T takeMin() throws InterruptedException {
+        T v;
+        while ((v = tryTakeMin()) == null) {
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T takeMin(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTakeMin()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTakeMin();
+        }
+        return v;
+    }
+}
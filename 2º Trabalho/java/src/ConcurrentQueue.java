@@ -1,19 +1,77 @@
-import java.util.concurrent.atomic.AtomicReference;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class ConcurrentQueue<T> {
-    private class Node<T> {
-        public T value;
-        public AtomicReference<Node<T>> next;
+public class ConcurrentQueue<T> implements SimpleQueue<T> {
+    /**
+     * O campo next é acedido através de um VarHandle em vez de um AtomicReference, pelo que cada elemento da fila
+     * custa uma única alocação (o nó) e não são necessários dois acessos a memória para chegar ao nó seguinte
+     */
+    private static class Node<T> {
+        T value;
+        volatile Node<T> next;
 
-        public Node(T value) {
+        Node(T value) {
             this.value = value;
-            next = new AtomicReference<>(null);
         }
     }
 
-    private Node<T> dummy = new Node<>(null);
-    private AtomicReference<Node<T>> head = new AtomicReference<>(dummy);
-    private AtomicReference<Node<T>> tail = new AtomicReference<>(dummy);
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // head e tail são alterados por threads diferentes (consumidores e produtores), pelo que ficam em linhas de cache diferentes
+    private final PaddedAtomicReference<Node<T>> head;
+    private final PaddedAtomicReference<Node<T>> tail;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+    // contadores de elementos inseridos e retirados, usados pelo size; são LongAdder para não serem uma linha de
+    // cache partilhada por todos os produtores e consumidores
+    private final LongAdder puts = new LongAdder(), takes = new LongAdder();
+    private final QueueStatistics statistics = QueueStatistics.create();
+    private final Backoff backoff;
+    private volatile Runnable nonEmptyListener;
+
+    public ConcurrentQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    /**
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar que a fila tenha elementos
+     */
+    public ConcurrentQueue(WaitStrategy waitStrategy) {
+        this(waitStrategy, Backoff.none());
+    }
+
+    /**
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar que a fila tenha elementos
+     * @param backoff a espera feita depois de cada compareAndSet falhado no put, putAll, tryTake e drainTo
+     */
+    public ConcurrentQueue(WaitStrategy waitStrategy, Backoff backoff) {
+        // o nó inicial não pode ficar num campo: seria uma referência para todos os nós alguma vez ligados depois dele
+        Node<T> dummy = new Node<>(null);
+        head = new PaddedAtomicReference<>(dummy);
+        tail = new PaddedAtomicReference<>(dummy);
+        this.waitStrategy = waitStrategy;
+        this.backoff = backoff;
+    }
 
     /**
      *  É criado inicialmente um novo elemento pronto a ser adicionado ao queue, e é guardado o estado
@@ -28,21 +86,305 @@ public class ConcurrentQueue<T> {
      */
     public void put(T elem){
         Node<T> node = new Node<>(elem);
+        int attempts = 0, failures = 0;
+        long firstRetry = 0;
 
         while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
             Node<T> observedNode = tail.get();
-            Node<T> observedNodeNext = observedNode.next.get();
+            Node<T> observedNodeNext = observedNode.next;
 
             if(observedNode == tail.get()) {
                 if (observedNodeNext != null) {  // significa que nesta iteração do while o o valor apontado pelo tail já tem next
-                    tail.compareAndSet(observedNode, observedNodeNext);
+                    if (tail.compareAndSet(observedNode, observedNodeNext))
+                        help("put");
                 } else {
-                    if (observedNode.next.compareAndSet(null, node)) {
+                    if (NEXT.compareAndSet(observedNode, (Node<T>) null, node)) {
                         tail.compareAndSet(observedNode, node);
+                        if (attempts > 1)
+                            contention("put", attempts, firstRetry);
+                        backoff.succeeded(failures);
+                        puts.increment();
+                        waitStrategy.signal();
+                        notifyNonEmpty(observedNode);
                         return;
                     }
+                    backoff.failed(++failures);
+                }
+            }
+        }
+    }
+
+    /**
+     * Regista o listener chamado, na thread do produtor, quando um put ou putAll coloca elementos na fila vazia.
+     * Existe um único listener por fila; um novo registo substitui o anterior e null remove-o
+     * @param listener
+     */
+    public void setNonEmptyListener(Runnable listener) {
+        nonEmptyListener = listener;
+    }
+
+    /**
+     * A fila estava vazia quando o nó ao qual o produtor ligou os seus era o sentinela. Caso o head já tenha avançado
+     * os elementos foram entretanto retirados e não há ninguém a avisar; o listener pode ser chamado a mais, quando o
+     * último elemento é retirado entre a ligação e a leitura do head, mas nunca a menos
+     */
+    private void notifyNonEmpty(Node<T> previousLast) {
+        Runnable listener = nonEmptyListener;
+        if (listener != null && previousLast == head.get())
+            listener.run();
+    }
+
+    /**
+     * Coloca todos os elementos na fila, pela ordem do iterador da colecção. Os nós são ligados entre si antes de
+     * serem publicados, pelo que a cadeia inteira é acrescentada ao fim da fila com um único compareAndSet sobre o
+     * next do último nó, seguido de um único compareAndSet sobre o tail, em vez de dois por elemento. Tal como no put,
+     * um produtor que encontre o tail atrasado ajuda a avançá-lo antes de tentar de novo.
+     * @param elems
+     */
+    public void putAll(Collection<? extends T> elems) {
+        Iterator<? extends T> it = elems.iterator();
+        if (!it.hasNext())
+            return;
+        Node<T> first = new Node<>(it.next()), last = first;
+        int count = 1;
+        while (it.hasNext()) {
+            Node<T> node = new Node<>(it.next());
+            NEXT.set(last, node);    // escrita simples, a cadeia só é publicada pelo compareAndSet abaixo
+            last = node;
+            count++;
+        }
+
+        int attempts = 0, failures = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Node<T> observedNode = tail.get();
+            Node<T> observedNodeNext = observedNode.next;
+
+            if (observedNode == tail.get()) {
+                if (observedNodeNext != null) {
+                    if (tail.compareAndSet(observedNode, observedNodeNext))
+                        help("putAll");
+                } else if (NEXT.compareAndSet(observedNode, (Node<T>) null, first)) {
+                    tail.compareAndSet(observedNode, last);
+                    if (attempts > 1)
+                        contention("putAll", attempts, firstRetry);
+                    backoff.succeeded(failures);
+                    puts.add(count);
+                    for (int i = 0; i < count; i++)    // cada signal só acorda um consumidor
+                        waitStrategy.signal();
+                    notifyNonEmpty(observedNode);
+                    return;
+                } else {
+                    backoff.failed(++failures);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retira até max elementos da fila e adiciona-os à colecção, pela ordem da fila. O consumidor percorre os nós a
+     * partir da cabeça e separa-os todos com um único compareAndSet sobre o head, colocando-o a apontar para o último
+     * nó percorrido; só depois de o compareAndSet ter sucesso lê os valores, que a partir desse momento já não são
+     * acessíveis a outros consumidores.
+     * @param target a colecção onde são colocados os elementos retirados
+     * @param max o número máximo de elementos a retirar
+     * @return o número de elementos retirados
+     */
+    public int drainTo(Collection<? super T> target, int max) {
+        if (max <= 0)
+            return 0;
+        int attempts = 0, failures = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Node<T> observedHead = head.get();
+            Node<T> first = observedHead.next;
+            if (first == null)
+                return 0;
+            Node<T> last = first, next;
+            int count = 1;
+            while (count < max && (next = last.next) != null) {
+                last = next;
+                count++;
+            }
+            if (head.compareAndSet(observedHead, last)) {
+                if (attempts > 1)
+                    contention("drainTo", attempts, firstRetry);
+                backoff.succeeded(failures);
+                takes.add(count);
+                Node<T> node = first;
+                for (int i = 0; i < count; i++) {
+                    target.add(node.value);
+                    node.value = null;
+                    node = node.next;
                 }
+                return count;
             }
+            backoff.failed(++failures);
+        }
+    }
+
+    /**
+     * Spliterator fracamente consistente sobre os elementos da fila, que não os retira: percorre os nós a partir da
+     * cabeça, ignorando os que entretanto foram retirados (com o valor a null), e pode ou não ver os elementos
+     * colocados depois de ter sido criado. Tal como o da ConcurrentLinkedQueue, o trySplit copia para um array um
+     * lote de nós consecutivos, com tamanho a duplicar em cada divisão
+     * @return
+     */
+    public Spliterator<T> spliterator() {
+        return new SnapshotSpliterator();
+    }
+
+    /**
+     * @return uma Stream sequencial sobre os elementos da fila, sem os retirar
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return uma Stream paralela sobre os elementos da fila, sem os retirar
+     */
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Spliterator que retira os elementos da fila à medida que os percorre. Cada trySplit reclama da fila, com o
+     * drainTo e portanto com um único compareAndSet sobre o head, um lote de nós consecutivos, que passa a pertencer
+     * ao Spliterator devolvido; os lotes crescem em cada divisão até MAX_DRAIN_BATCH. Os lotes são prefixos da parte
+     * ainda não reclamada da fila, pelo que a ordem de encontro é a ordem da fila. Os elementos colocados enquanto o
+     * Spliterator é percorrido também são retirados, e a travessia termina quando encontra a fila vazia
+     * @return
+     */
+    public Spliterator<T> drainingSpliterator() {
+        return new DrainingSpliterator();
+    }
+
+    /**
+     * @param parallel indica se a Stream é paralela, repartindo os lotes reclamados pelo ForkJoinPool comum
+     * @return uma Stream que retira os elementos da fila
+     */
+    public Stream<T> drainingStream(boolean parallel) {
+        return StreamSupport.stream(drainingSpliterator(), parallel);
+    }
+
+    private static final int INITIAL_BATCH = 64, MAX_DRAIN_BATCH = 1 << 16, MAX_SNAPSHOT_BATCH = 1 << 25;
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.CONCURRENT;
+
+    private final class SnapshotSpliterator implements Spliterator<T> {
+        private Node<T> current;    // o último nó percorrido, null antes de começar
+        private boolean exhausted;
+        private int batch = INITIAL_BATCH;
+
+        private Node<T> next() {
+            if (exhausted)
+                return null;
+            Node<T> node = current == null ? head.get().next : current.next;
+            if (node == null)
+                exhausted = true;
+            else
+                current = node;
+            return node;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Node<T> node;
+            while ((node = next()) != null) {
+                T value = node.value;
+                if (value != null) {
+                    action.accept(value);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Node<T> node;
+            while ((node = next()) != null) {
+                T value = node.value;
+                if (value != null)
+                    action.accept(value);
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            Object[] values = new Object[batch];
+            int count = 0;
+            Node<T> node;
+            while (count < values.length && (node = next()) != null) {
+                T value = node.value;
+                if (value != null)
+                    values[count++] = value;
+            }
+            if (count == 0)
+                return null;
+            batch = Math.min(batch * 2, MAX_SNAPSHOT_BATCH);
+            return Spliterators.spliterator(values, 0, count, CHARACTERISTICS);
+        }
+
+        @Override
+        public long estimateSize() {
+            return exhausted ? 0 : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+
+    private final class DrainingSpliterator implements Spliterator<T> {
+        private int batch = INITIAL_BATCH;
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            T value = tryTake();
+            if (value == null)
+                return false;
+            action.accept(value);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            List<T> drained = new ArrayList<>();
+            while (drainTo(drained, MAX_DRAIN_BATCH) > 0) {
+                for (T value : drained)
+                    action.accept(value);
+                drained.clear();
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            List<T> drained = new ArrayList<>(batch);
+            if (drainTo(drained, batch) == 0)
+                return null;
+            batch = Math.min(batch * 2, MAX_DRAIN_BATCH);
+            return drained.spliterator();
+        }
+
+        /**
+         * O size é aproximado, mas é o que permite ao ForkJoin decidir quantas vezes dividir
+         */
+        @Override
+        public long estimateSize() {
+            return size();
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
         }
     }
 
@@ -55,39 +397,94 @@ public class ConcurrentQueue<T> {
      * @return
      */
     public T tryTake(){
+        int attempts = 0, failures = 0;
+        long firstRetry = 0;
         while (true) {
-            if (head.get().next.get() == null)
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            if (head.get().next == null)
                 return null;
             Node<T> observedHead = head.get();
-            Node<T> node = observedHead.next.get();
+            Node<T> node = observedHead.next;
             if (node != null) {
                 if (head.compareAndSet(observedHead, node)) {
                     T value = node.value;
                     node.value = null;
+                    if (attempts > 1)
+                        contention("tryTake", attempts, firstRetry);
+                    backoff.succeeded(failures);
+                    takes.increment();
                     return value;
                 }
+                backoff.failed(++failures);
             }
         }
     }
 
+    /**
+     * Número aproximado de elementos na fila, calculado em O(1) a partir dos contadores de inserções e remoções. Com
+     * operações a decorrer o valor pode não corresponder a nenhum estado real da fila, mas sem operações concorrentes
+     * é exacto
+     * @return
+     */
+    public int size() {
+        long size = puts.sum() - takes.sum();
+        return size <= 0 ? 0 : (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return os contadores de contenção da fila, ou null caso a propriedade queue.statistics não esteja activa
+     */
+    public QueueStatistics statistics() {
+        return statistics;
+    }
+
+    private void contention(String operation, int attempts, long firstRetry) {
+        QueueEvents.contention("ConcurrentQueue", operation, attempts - 1, firstRetry);
+        if (statistics != null)
+            statistics.casFailures(operation, attempts - 1);
+    }
+
+    private void help(String operation) {
+        if (statistics != null)
+            statistics.help(operation);
+    }
+
     /**
      * indica se a fila está vazia. O que acontece quando a cabeça da fila não aponte para nenhum elemento
      * @return
      */
     public boolean isEmpty(){
-        return head.get().next.get() == null;
+        return head.get().next == null;
     }
 
     /**
-     * Fica num ciclo infinito a tentar remover um elemento da fila
+     * Tenta remover um elemento da fila e, enquanto a fila estiver vazia, espera segundo a estratégia de espera da
+     * fila
      * @return
      * @throws InterruptedException
      */
     public T dequeue() throws InterruptedException {
         T v;
         while ((v = tryTake()) == null) {
-            Thread.sleep(0);
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    /**
+     * Igual ao dequeue, mas desiste caso a fila continue vazia depois de passar o timeout
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
         }
         return v;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fábrica das filas ligadas ilimitadas. A implementação é escolhida a partir do número declarado de produtores e de
+ * consumidores, usando a variante com menos sincronização que é correcta para essa cardinalidade. Em modo de
+ * verificação (propriedade queue.checkCardinality, ou o parâmetro checked) a fila é envolvida numa
+ * CardinalityCheckingQueue, que lança IllegalStateException quando duas threads usam ao mesmo tempo uma extremidade
+ * declarada como SINGLE.
+ */
+public final class ConcurrentQueues {
+    static final boolean CHECK_CARDINALITY = Boolean.getBoolean("queue.checkCardinality");
+
+    public enum Cardinality {
+        SINGLE, MULTI
+    }
+
+    private ConcurrentQueues() {
+    }
+
+    public static <T> SimpleQueue<T> create(Cardinality producers, Cardinality consumers) {
+        return create(producers, consumers, WaitStrategy.yielding(), CHECK_CARDINALITY);
+    }
+
+    public static <T> SimpleQueue<T> create(Cardinality producers, Cardinality consumers, WaitStrategy waitStrategy) {
+        return create(producers, consumers, waitStrategy, CHECK_CARDINALITY);
+    }
+
+    /**
+     * @param producers o número de threads que vão colocar elementos na fila
+     * @param consumers o número de threads que vão retirar elementos da fila
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue
+     * @param checked indica se a fila deve verificar que a cardinalidade declarada é respeitada
+     */
+    public static <T> SimpleQueue<T> create(Cardinality producers, Cardinality consumers, WaitStrategy waitStrategy,
+                                            boolean checked) {
+        SimpleQueue<T> queue;
+        if (producers == Cardinality.SINGLE)
+            queue = consumers == Cardinality.SINGLE ? new SpscQueue<>(waitStrategy) : new SpmcQueue<>(waitStrategy);
+        else
+            queue = consumers == Cardinality.SINGLE ? new MpscQueue<>(waitStrategy) : new ConcurrentQueue<>(waitStrategy);
+        if (checked && (producers == Cardinality.SINGLE || consumers == Cardinality.SINGLE))
+            queue = new CardinalityCheckingQueue<>(queue, producers, consumers);
+        return queue;
+    }
+
+    /**
+     * Envolve uma fila e verifica, em cada operação, que nenhuma outra thread está a meio de uma operação na mesma
+     * extremidade da fila quando essa extremidade foi declarada SINGLE. A verificação detecta utilizações
+     * concorrentes e não a passagem da extremidade de uma thread para outra, que é correcta desde que exista
+     * sincronização entre as duas threads. Como só detecta sobreposições que aconteçam de facto, destina-se a testes
+     * e a depuração, não a garantir a correcção em produção.
+     */
+    static final class CardinalityCheckingQueue<T> implements SimpleQueue<T> {
+        private final SimpleQueue<T> queue;
+        private final AtomicReference<Thread> producer, consumer;
+
+        CardinalityCheckingQueue(SimpleQueue<T> queue, Cardinality producers, Cardinality consumers) {
+            this.queue = queue;
+            producer = producers == Cardinality.SINGLE ? new AtomicReference<>() : null;
+            consumer = consumers == Cardinality.SINGLE ? new AtomicReference<>() : null;
+        }
+
+        private static void enter(AtomicReference<Thread> owner, String side) {
+            if (owner == null)
+                return;
+            Thread current = Thread.currentThread();
+            if (!owner.compareAndSet(null, current) && owner.get() != current)
+                throw new IllegalStateException("Concurrent " + side + " on a queue declared with a single " + side
+                        + ": " + owner.get() + " and " + current);
+        }
+
+        private static void exit(AtomicReference<Thread> owner) {
+            if (owner != null)
+                owner.set(null);
+        }
+
+        public void put(T elem) {
+            enter(producer, "producer");
+            try {
+                queue.put(elem);
+            } finally {
+                exit(producer);
+            }
+        }
+
+        public T tryTake() {
+            enter(consumer, "consumer");
+            try {
+                return queue.tryTake();
+            } finally {
+                exit(consumer);
+            }
+        }
+
+        public boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        public T dequeue() throws InterruptedException {
+            enter(consumer, "consumer");
+            try {
+                return queue.dequeue();
+            } finally {
+                exit(consumer);
+            }
+        }
+
+        public T dequeue(long timeout) throws InterruptedException {
+            enter(consumer, "consumer");
+            try {
+                return queue.dequeue(timeout);
+            } finally {
+                exit(consumer);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pilha lock-free de Treiber com um array de eliminação (Hendler, Shavit e Yerushalmi). Com a mesma interface das
+ * filas (put, tryTake, dequeue), mas LIFO: tryTake retira o último elemento colocado.
+ *
+ * Na pilha de Treiber todas as operações disputam o top, pelo que com muitas threads quase todos os compareAndSet
+ * falham. Aqui, quando o compareAndSet de um put falha, o produtor em vez de voltar a tentar imediatamente deixa o seu
+ * nó numa posição aleatória do array de eliminação e espera algumas iterações; um tryTake cujo compareAndSet falhe
+ * procura numa posição aleatória um nó deixado por um put e, caso o consiga retirar da posição, devolve o seu valor.
+ * Um put e um tryTake concorrentes anulam-se assim sem tocar no top, e o resultado é o mesmo de o put ter sido
+ * linearizado imediatamente antes do tryTake. Quanto maior a contenção, mais operações são eliminadas.
+ */
+public class EliminationStack<T> implements SimpleQueue<T> {
+    private static final int ELIMINATION_SPINS = 128;
+
+    private static class Node<T> {
+        final T value;
+        Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+    // só uma em cada SLOT_STRIDE posições é usada, para que duas posições não fiquem na mesma linha de cache
+    private static final int SLOT_STRIDE = 16;
+
+    private final PaddedAtomicReference<Node<T>> top = new PaddedAtomicReference<>(null);
+    private final Object[] slots;
+    private final int width;
+    private final LongAdder eliminations = new LongAdder();
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    /**
+     * Cria uma pilha com uma posição de eliminação por processador
+     */
+    public EliminationStack() {
+        this(Runtime.getRuntime().availableProcessors(), WaitStrategy.yielding());
+    }
+
+    /**
+     * @param width o número de posições do array de eliminação; com 0 a pilha é uma pilha de Treiber simples
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar que a pilha tenha elementos
+     */
+    public EliminationStack(int width, WaitStrategy waitStrategy) {
+        if (width < 0)
+            throw new IllegalArgumentException("width must not be negative");
+        this.width = width;
+        this.slots = new Object[width * SLOT_STRIDE];
+        this.waitStrategy = waitStrategy;
+    }
+
+    public void put(T elem) {
+        if (elem == null)
+            throw new NullPointerException();
+        Node<T> node = new Node<>(elem);
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Node<T> observedTop = top.get();
+            node.next = observedTop;
+            if (top.compareAndSet(observedTop, node) || (width > 0 && eliminatePut(node))) {
+                if (attempts > 1)
+                    QueueEvents.contention("EliminationStack", "put", attempts - 1, firstRetry);
+                waitStrategy.signal();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deixa o nó numa posição livre do array e espera que um tryTake o leve. Caso nenhum o leve o produtor tenta
+     * retirá-lo da posição; se esse compareAndSet falhar é porque um tryTake o levou entretanto
+     * @return true caso o nó tenha sido levado por um tryTake
+     */
+    private boolean eliminatePut(Node<T> node) {
+        int index = ThreadLocalRandom.current().nextInt(width) * SLOT_STRIDE;
+        if (!SLOTS.compareAndSet(slots, index, null, node))
+            return false;
+        for (int i = 0; i < ELIMINATION_SPINS; i++) {
+            if (SLOTS.getVolatile(slots, index) != node)
+                return true;
+            Thread.onSpinWait();
+        }
+        return !SLOTS.compareAndSet(slots, index, node, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Node<T> observedTop = top.get();
+            if (observedTop == null)
+                return eliminateTake();    // pode haver um put à espera no array
+            if (top.compareAndSet(observedTop, observedTop.next)) {
+                if (attempts > 1)
+                    QueueEvents.contention("EliminationStack", "tryTake", attempts - 1, firstRetry);
+                return observedTop.value;
+            }
+            T value = eliminateTake();
+            if (value != null) {
+                if (attempts > 1)
+                    QueueEvents.contention("EliminationStack", "tryTake", attempts - 1, firstRetry);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Procura numa posição aleatória do array um nó deixado por um put
+     * @return o valor do nó levado, ou null caso a posição esteja vazia ou outro tryTake o tenha levado
+     */
+    @SuppressWarnings("unchecked")
+    private T eliminateTake() {
+        if (width == 0)
+            return null;
+        int index = ThreadLocalRandom.current().nextInt(width) * SLOT_STRIDE;
+        Object observed = SLOTS.getVolatile(slots, index);
+        if (observed != null && SLOTS.compareAndSet(slots, index, observed, null)) {
+            eliminations.increment();
+            return ((Node<T>) observed).value;
+        }
+        return null;
+    }
+
+    /**
+     * Os nós à espera no array de eliminação não contam: os seus put ainda não terminaram
+     */
+    public boolean isEmpty() {
+        return top.get() == null;
+    }
+
+    /**
+     * @return o número de pares put/tryTake que se anularam no array de eliminação
+     */
+    public long eliminations() {
+        return eliminations.sum();
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
@@ -0,0 +1,214 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fila com flat combining (Hendler, Incze, Shavit e Tzafrir). Cada thread publica a sua operação num registo de
+ * publicação próprio, ligado a uma lista partilhada, e tenta adquirir o lock do combinador. A thread que o consegue
+ * percorre a lista e aplica sequencialmente, sobre uma ArrayDeque que só ela acede, todas as operações publicadas,
+ * devolvendo a cada thread o seu resultado; as restantes esperam pelo resultado no seu próprio registo. Com muitas
+ * threads a única linha de cache disputada é a do lock, e a fila propriamente dita fica na cache do combinador.
+ */
+public class FlatCombiningQueue<T> implements SimpleQueue<T> {
+    private static final int NONE = 0, PUT = 1, TAKE = 2;
+    private static final int COMBINING_ROUNDS = 3;
+    private static final int CLEANUP_INTERVAL = 128;
+    private static final int SPINS = 64;
+
+    /**
+     * Registo de publicação de uma thread. op passa de NONE para PUT ou TAKE quando a thread publica uma operação e
+     * volta a NONE, escrito pelo combinador, quando o resultado já está em item
+     */
+    private static final class Record {
+        volatile int op = NONE;
+        Object item;
+        volatile boolean active;
+        volatile Record next;
+        long lastUsed;
+    }
+
+    private static final VarHandle ACTIVE;
+
+    static {
+        try {
+            ACTIVE = MethodHandles.lookup().findVarHandle(Record.class, "active", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final AtomicReference<Record> publications = new AtomicReference<>();
+    private final AtomicBoolean lock = new AtomicBoolean();
+    private final ThreadLocal<Record> records = ThreadLocal.withInitial(Record::new);
+    private final ArrayDeque<T> queue = new ArrayDeque<>();    // só acedida pelo combinador
+    private volatile int size;
+    private long passes;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    public FlatCombiningQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    /**
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar que a fila tenha elementos
+     */
+    public FlatCombiningQueue(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public void put(T elem) {
+        if (elem == null)
+            throw new NullPointerException();
+        apply(PUT, elem);
+        waitStrategy.signal();
+    }
+
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        return (T) apply(TAKE, null);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return o número de elementos da fila depois da última passagem do combinador
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Publica a operação no registo da thread e espera pelo resultado, tentando ser o combinador sempre que o lock
+     * está livre. Depois de publicar a operação a thread verifica se o registo ainda está na lista (o combinador
+     * retira os registos que não são usados há muito tempo) e, caso não esteja, volta a ligá-lo. O campo active só
+     * muda com compareAndSet, pelo que quando o combinador e a thread tentam ao mesmo tempo reactivar um registo
+     * apenas um deles o consegue e o registo nunca fica ligado duas vezes.
+     */
+    private Object apply(int op, Object item) {
+        Record record = records.get();
+        record.item = item;
+        record.op = op;
+        if (!record.active && ACTIVE.compareAndSet(record, false, true))
+            link(record);
+
+        for (int i = 0; record.op != NONE; i++) {
+            if (!lock.get() && lock.compareAndSet(false, true)) {
+                try {
+                    combine(record);
+                } finally {
+                    lock.set(false);
+                }
+            } else if (i < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        Object result = record.item;
+        record.item = null;
+        return result;
+    }
+
+    private void link(Record record) {
+        Record observedHead;
+        do {
+            observedHead = publications.get();
+            record.next = observedHead;
+        } while (!publications.compareAndSet(observedHead, record));
+    }
+
+    /**
+     * Aplica a operação do próprio combinador, que pode ainda não estar ligada à lista, e depois faz algumas
+     * passagens pela lista de publicação
+     */
+    private void combine(Record own) {
+        long pass = ++passes;
+        if (own.op != NONE)
+            serve(own, pass);
+        for (int round = 0; round < COMBINING_ROUNDS; round++) {
+            boolean served = false;
+            for (Record record = publications.get(); record != null; record = record.next) {
+                if (record.op != NONE) {
+                    serve(record, pass);
+                    served = true;
+                }
+            }
+            if (!served)
+                break;
+        }
+        if (pass % CLEANUP_INTERVAL == 0)
+            cleanUp(pass);
+    }
+
+    /**
+     * O size é actualizado antes de o resultado ser entregue, para que um consumidor acordado pelo signal do put veja
+     * a fila como não vazia
+     */
+    @SuppressWarnings("unchecked")
+    private void serve(Record record, long pass) {
+        if (record.op == PUT) {
+            queue.addLast((T) record.item);
+            record.item = null;
+        } else {
+            record.item = queue.pollFirst();
+        }
+        size = queue.size();
+        record.lastUsed = pass;
+        record.op = NONE;
+    }
+
+    /**
+     * Retira da lista os registos que não são usados há mais de CLEANUP_INTERVAL passagens, por exemplo de threads
+     * que já terminaram. O primeiro registo nunca é retirado, porque é nele que as threads ligam os registos novos.
+     * O next de cada registo é lido antes de o desactivar, porque a partir desse momento a thread dona do registo
+     * pode voltar a ligá-lo à cabeça da lista, alterando o seu next. Caso o registo tenha entretanto uma operação
+     * publicada o combinador tenta reactivá-lo; se a thread já o tiver feito, o registo está ligado na cabeça e é
+     * retirado desta posição.
+     */
+    private void cleanUp(long pass) {
+        Record previous = publications.get();
+        if (previous == null)
+            return;
+        Record next;
+        for (Record record = previous.next; record != null; record = next) {
+            next = record.next;
+            if (pass - record.lastUsed > CLEANUP_INTERVAL && ACTIVE.compareAndSet(record, true, false)) {
+                if (record.op == NONE || !ACTIVE.compareAndSet(record, false, true)) {
+                    previous.next = next;
+                    continue;
+                }
+            }
+            previous = record;
+        }
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
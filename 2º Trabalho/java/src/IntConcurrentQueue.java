@@ -0,0 +1,72 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Versão da ConcurrentQueue para valores int. O valor é guardado directamente no nó, pelo que cada elemento custa
+ * uma única alocação e não há boxing. Como null deixa de poder indicar que a fila está vazia, o tryTake entrega o
+ * valor a um IntConsumer e retorna se existia algum elemento. O algoritmo é o da AbstractPrimitiveLinkedQueue,
+ * partilhado com a LongConcurrentQueue.
+ */
+public class IntConcurrentQueue extends AbstractPrimitiveLinkedQueue {
+    private static final class IntNode extends Node {
+        final int value;
+
+        IntNode(int value) {
+            this.value = value;
+        }
+    }
+
+    public IntConcurrentQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    public IntConcurrentQueue(WaitStrategy waitStrategy) {
+        super(waitStrategy, new IntNode(0));
+    }
+
+    /**
+     * Igual ao put da ConcurrentQueue
+     * @param value
+     */
+    public void put(int value) {
+        link(new IntNode(value));
+    }
+
+    /**
+     * Tenta retirar o primeiro elemento da fila sem esperar
+     * @param action recebe o valor retirado, caso exista
+     * @return true caso tenha sido retirado um elemento, false caso a fila esteja vazia
+     */
+    public boolean tryTake(IntConsumer action) {
+        Node node = unlink();
+        if (node == null)
+            return false;
+        action.accept(((IntNode) node).value);
+        return true;
+    }
+
+    /**
+     * Retira o primeiro elemento da fila, esperando segundo a estratégia de espera enquanto a fila estiver vazia
+     * @return o valor retirado
+     * @throws InterruptedException
+     */
+    public int dequeue() throws InterruptedException {
+        return ((IntNode) awaitUnlink()).value;
+    }
+
+    /**
+     * Igual ao dequeue, mas desiste caso a fila continue vazia depois de passar o timeout
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @param action recebe o valor retirado, caso exista
+     * @return true caso tenha sido retirado um elemento, false caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public boolean dequeue(long timeout, IntConsumer action) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!tryTake(action)) {
+            if (!awaitNotEmpty(deadline))
+                return tryTake(action);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,404 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fila persistente de mensagens (byte[] ou ByteBuffer) guardadas em segmentos de tamanho fixo, ficheiros só de
+ * acrescento mapeados em memória, pelo que as mensagens sobrevivem ao reinício do processo e não ocupam o heap.
+ *
+ * Cada mensagem é guardada como [int tamanho][conteúdo], alinhada a 4 bytes. Os produtores reservam o espaço com um
+ * compareAndSet sobre a posição global de escrita, copiam o conteúdo e só no fim escrevem o tamanho (escrita
+ * release), que é o que torna a mensagem visível: um tamanho 0 significa que a mensagem ainda não foi publicada e
+ * END que o resto do segmento não é usado. Os leitores têm nome e a sua posição é um long num ficheiro próprio
+ * (nome.reader), também mapeado, que é avançado directamente com compareAndSet, pelo que várias threads podem
+ * partilhar o mesmo leitor. As mensagens são entregues sem cópia, como ByteBuffer só de leitura sobre o ficheiro
+ * mapeado; a posição do leitor avança antes de a mensagem ser processada (entrega at-most-once depois de uma falha).
+ *
+ * Um segmento é apagado quando todos os leitores conhecidos já passaram o seu fim, e só os produtores criam segmentos:
+ * um leitor atrasado nunca recria um segmento apagado. Com Fsync.NONE a escrita para o
+ * disco fica a cargo do sistema operativo; ON_ROLL força cada segmento quando fica cheio e ALWAYS força o segmento e a
+ * posição do leitor depois de cada operação.
+ */
+public class JournalQueue implements SimpleQueue<ByteBuffer>, AutoCloseable {
+    public enum Fsync {
+        NONE, ON_ROLL, ALWAYS
+    }
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final String DEFAULT_READER = "default";
+
+    private static final int END = -1;
+    private static final String SEGMENT_SUFFIX = ".journal", READER_SUFFIX = ".reader";
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Fsync fsync;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Reader> readers = new ConcurrentHashMap<>();
+    private final AtomicLong writePosition;
+    private volatile long firstPosition;
+    private final WaitStrategy waitStrategy;
+
+    public JournalQueue(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, Fsync.NONE, WaitStrategy.yielding());
+    }
+
+    /**
+     * Abre a fila guardada na directoria, ou cria uma nova. A posição de escrita é recuperada percorrendo as mensagens
+     * publicadas do último segmento, e os leitores existentes continuam na posição que tinham
+     * @param directory a directoria dos segmentos e das posições dos leitores
+     * @param segmentSize o tamanho de cada segmento, em bytes, múltiplo de 4 (deve ser igual ao usado na criação)
+     * @param fsync quando forçar a escrita para o disco
+     * @param waitStrategy a estratégia usada pelos leitores no dequeue
+     * @throws IOException
+     */
+    public JournalQueue(Path directory, int segmentSize, Fsync fsync, WaitStrategy waitStrategy) throws IOException {
+        if (segmentSize < 16 || segmentSize % 4 != 0)
+            throw new IllegalArgumentException("segmentSize must be a multiple of 4 and at least 16");
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        this.waitStrategy = waitStrategy;
+
+        TreeSet<Long> bases = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        firstPosition = bases.isEmpty() ? 0 : bases.first();
+        writePosition = new AtomicLong(bases.isEmpty() ? 0 : recover(bases.last()));
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + READER_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                name = name.substring(0, name.length() - READER_SUFFIX.length());
+                readers.put(name, new Reader(name));
+            }
+        }
+    }
+
+    /**
+     * @return a posição a seguir à última mensagem publicada do segmento
+     */
+    private long recover(long base) {
+        ByteBuffer segment = segment(base);
+        int offset = 0;
+        while (offset < segmentSize) {
+            int length = (int) INT.getAcquire(segment, offset);
+            if (length == END)
+                return base + segmentSize;
+            if (length == 0)
+                break;
+            offset += recordSize(length);
+        }
+        return base + offset;
+    }
+
+    private static int recordSize(int length) {
+        return (4 + length + 3) & ~3;
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * O segmento onde o produtor escreve, criado caso ainda não exista
+     */
+    private MappedByteBuffer segment(long base) {
+        return segments.computeIfAbsent(base, b -> map(segmentFile(b), segmentSize, true));
+    }
+
+    /**
+     * O segmento onde um leitor lê, sem nunca o criar. Uma thread com uma posição desactualizada do leitor, que outra
+     * thread do mesmo leitor já avançou, pode pedir um segmento que entretanto foi apagado; criá-lo de novo deixaria
+     * um segmento vazio que nunca mais seria apagado e onde os leitores novos ficariam parados depois de reiniciar
+     * @return o segmento, ou null caso já tenha sido apagado ou o produtor que reservou a posição ainda não o tenha
+     * criado
+     */
+    private MappedByteBuffer existingSegment(long base) {
+        MappedByteBuffer segment = segments.get(base);
+        if (segment == null) {
+            if (base < firstPosition)
+                return null;
+            try {
+                segment = segments.computeIfAbsent(base, b -> map(segmentFile(b), segmentSize, false));
+            } catch (UncheckedIOException e) {
+                if (e.getCause() instanceof NoSuchFileException)
+                    return null;
+                throw e;
+            }
+        }
+        // o releaseSegments avança o firstPosition antes de retirar o segmento do mapa
+        if (base < firstPosition) {
+            segments.remove(base, segment);
+            return null;
+        }
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path file, int size, boolean create) {
+        EnumSet<StandardOpenOption> options = EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (create)
+            options.add(StandardOpenOption.CREATE);
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void put(ByteBuffer message) {
+        append(message.duplicate(), null);
+    }
+
+    public void put(byte[] message) {
+        append(null, message);
+    }
+
+    /**
+     * Reserva o espaço da mensagem no segmento actual com um compareAndSet sobre writePosition. Caso a mensagem não
+     * caiba no resto do segmento, o produtor tenta avançar a posição para o início do segmento seguinte e, se
+     * conseguir, marca o resto do segmento com END para os leitores saltarem para o segmento seguinte
+     */
+    private void append(ByteBuffer buffer, byte[] array) {
+        int length = buffer != null ? buffer.remaining() : array.length;
+        int size = recordSize(length);
+        if (length == 0 || size > segmentSize)
+            throw new IllegalArgumentException("message size must be between 1 and " + (segmentSize - 4));
+        while (true) {
+            long position = writePosition.get();
+            long base = position - position % segmentSize;
+            int offset = (int) (position - base);
+            if (offset + size <= segmentSize) {
+                if (writePosition.compareAndSet(position, position + size)) {
+                    MappedByteBuffer segment = segment(base);
+                    ByteBuffer target = segment.duplicate();
+                    target.position(offset + 4);
+                    if (buffer != null)
+                        target.put(buffer);
+                    else
+                        target.put(array);
+                    INT.setRelease(segment, offset, length);
+                    if (fsync == Fsync.ALWAYS || fsync == Fsync.ON_ROLL && offset + size == segmentSize)
+                        segment.force();
+                    waitStrategy.signal();
+                    return;
+                }
+            } else if (writePosition.compareAndSet(position, base + segmentSize)) {
+                MappedByteBuffer segment = segment(base);
+                INT.setRelease(segment, offset, END);
+                if (fsync != Fsync.NONE)
+                    segment.force();
+            }
+        }
+    }
+
+    /**
+     * Obtém o leitor com o nome dado, criando-o na posição da mensagem mais antiga ainda guardada caso não exista
+     * @param name o nome do leitor, usado no nome do ficheiro da sua posição
+     */
+    public Reader reader(String name) {
+        Reader reader = readers.get(name);
+        if (reader != null)
+            return reader;
+        synchronized (this) {
+            return readers.computeIfAbsent(name, Reader::new);
+        }
+    }
+
+    /**
+     * Apaga os segmentos que todos os leitores já passaram. O mínimo é calculado e os segmentos são apagados sob o
+     * lock da fila, para que um leitor novo não seja criado numa posição de um segmento que está a ser apagado. O
+     * firstPosition avança antes de cada segmento ser apagado, para que o existingSegment não o volte a mapear
+     */
+    private synchronized void releaseSegments() {
+        long min = writePosition.get();
+        for (Reader reader : readers.values())
+            min = Math.min(min, reader.position());
+        long first = firstPosition;
+        while (first + segmentSize <= min) {
+            long released = first;
+            first += segmentSize;
+            firstPosition = first;
+            segments.remove(released);
+            try {
+                Files.deleteIfExists(segmentFile(released));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Leitor de mensagens com uma posição persistente. Várias threads podem usar o mesmo leitor, e cada mensagem é
+     * entregue a apenas uma delas
+     */
+    public final class Reader {
+        private final String name;
+        private final MappedByteBuffer position;
+        private final BooleanSupplier available = () -> !isEmpty();
+
+        private Reader(String name) {
+            this.name = name;
+            Path file = directory.resolve(name + READER_SUFFIX);
+            boolean exists = Files.exists(file);
+            position = map(file, 8, true);
+            if (!exists) {
+                LONG.setRelease(position, 0, firstPosition);
+                if (fsync != Fsync.NONE)
+                    position.force();
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long position() {
+            return (long) LONG.getAcquire(position, 0);
+        }
+
+        /**
+         * Tenta ler a próxima mensagem sem esperar
+         * @return a mensagem, como ByteBuffer só de leitura sobre o segmento mapeado, ou null caso não exista
+         */
+        public ByteBuffer tryRead() {
+            while (true) {
+                long current = position();
+                if (current >= writePosition.get())
+                    return null;
+                long base = current - current % segmentSize;
+                int offset = (int) (current - base);
+                MappedByteBuffer segment = existingSegment(base);
+                if (segment == null) {
+                    if (current >= firstPosition)
+                        return null;    // o produtor que reservou a posição ainda não criou o segmento
+                    continue;    // outra thread do leitor já passou o segmento, que foi apagado
+                }
+                int length = (int) INT.getAcquire(segment, offset);
+                if (length == 0)
+                    return null;    // reservada mas ainda não publicada
+                if (length == END) {
+                    if (LONG.compareAndSet(position, 0, current, base + segmentSize)) {
+                        if (fsync != Fsync.NONE)
+                            position.force();
+                        releaseSegments();
+                    }
+                    continue;
+                }
+                long next = current + recordSize(length);
+                if (LONG.compareAndSet(position, 0, current, next)) {
+                    if (fsync == Fsync.ALWAYS)
+                        position.force();
+                    if (next % segmentSize == 0)    // a mensagem acabava exactamente no fim do segmento
+                        releaseSegments();
+                    ByteBuffer message = segment.duplicate();
+                    message.position(offset + 4).limit(offset + 4 + length);
+                    return message.slice().asReadOnlyBuffer();
+                }
+            }
+        }
+
+        /**
+         * @return true caso não exista nenhuma mensagem publicada na posição do leitor
+         */
+        public boolean isEmpty() {
+            while (true) {
+                long current = position();
+                if (current >= writePosition.get())
+                    return true;
+                long base = current - current % segmentSize;
+                MappedByteBuffer segment = existingSegment(base);
+                if (segment != null)
+                    return (int) INT.getAcquire(segment, (int) (current - base)) == 0;
+                if (current >= firstPosition)
+                    return true;
+            }
+        }
+
+        public ByteBuffer read() throws InterruptedException {
+            ByteBuffer message;
+            while ((message = tryRead()) == null)
+                waitStrategy.await(available, Long.MAX_VALUE);
+            return message;
+        }
+
+        /**
+         * @param timeout o tempo máximo de espera, em milissegundos
+         * @return a mensagem ou null caso tenha ocorrido timeout
+         * @throws InterruptedException
+         */
+        public ByteBuffer read(long timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            ByteBuffer message;
+            while ((message = tryRead()) == null) {
+                if (!waitStrategy.await(available, deadline))
+                    return tryRead();
+            }
+            return message;
+        }
+    }
+
+    /**
+     * As operações de SimpleQueue usam o leitor DEFAULT_READER
+     */
+    public ByteBuffer tryTake() {
+        return reader(DEFAULT_READER).tryRead();
+    }
+
+    public boolean isEmpty() {
+        return reader(DEFAULT_READER).isEmpty();
+    }
+
+    public ByteBuffer dequeue() throws InterruptedException {
+        return reader(DEFAULT_READER).read();
+    }
+
+    public ByteBuffer dequeue(long timeout) throws InterruptedException {
+        return reader(DEFAULT_READER).read(timeout);
+    }
+
+    /**
+     * @return o número de segmentos mapeados
+     */
+    int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Força a escrita para o disco de todos os segmentos e das posições dos leitores. Os mapeamentos só são libertados
+     * pelo Garbage Collector, pelo que as mensagens já entregues continuam acessíveis
+     */
+    public void close() {
+        for (Map.Entry<Long, MappedByteBuffer> segment : segments.entrySet())
+            segment.getValue().force();
+        for (Reader reader : readers.values())
+            reader.position.force();
+        segments.clear();
+    }
+}
@@ -1,33 +1,59 @@
-import java.util.concurrent.atomic.AtomicReference;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 public class LockFreeDualQueue<T> {
     // types of queue nodes
     private enum NodeType { DATUM, REQUEST }
 
-    // the queue node
+    // the queue node; request and next are embedded fields accessed through VarHandles
     private static class QNode<T> {
-        NodeType type;
+        final NodeType type;
         final T data;
-        final AtomicReference<QNode<T>> request;
-        final AtomicReference<QNode<T>> next;
+        volatile QNode<T> request;
+        volatile QNode<T> next;
+        // the consumer waiting on the predecessor's request; published by the CAS that links the node
+        Thread waiter;
 
         //  build a datum or request node
         QNode(T d, NodeType t) {
             type = t;
             data = d;
-            request = new AtomicReference<>(null);
-            next = new AtomicReference<>(null);
         }
     }
 
-    // the head and tail references
-    private final AtomicReference<QNode<T>> head;
-    private final AtomicReference<QNode<T>> tail;
+    // placed in request by a consumer that gives up waiting; producers skip it like a fulfilled request
+    private static final QNode<Object> CANCELLED = new QNode<>(null, NodeType.DATUM);
+    // spins before parking; with a single processor the producer cannot run while the consumer spins
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+
+    private static final VarHandle REQUEST, NEXT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            REQUEST = lookup.findVarHandle(QNode.class, "request", QNode.class);
+            NEXT = lookup.findVarHandle(QNode.class, "next", QNode.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // the head and tail references, padded so that producers and consumers do not false-share
+    private final PaddedAtomicReference<QNode<T>> head;
+    private final PaddedAtomicReference<QNode<T>> tail;
+    // data nodes enqueued and taken, used by size
+    private final LongAdder enqueues = new LongAdder(), dequeues = new LongAdder();
+    private final QueueStatistics statistics = QueueStatistics.create();
+    private volatile Runnable nonEmptyListener;
 
     public LockFreeDualQueue() {
         QNode<T> sentinel = new QNode<T>(null, NodeType.DATUM);
-        head = new AtomicReference<>(sentinel);
-        tail = new AtomicReference<>(sentinel);
+        head = new PaddedAtomicReference<>(sentinel);
+        tail = new PaddedAtomicReference<>(sentinel);
     }
 
     /**
@@ -46,90 +72,244 @@ public class LockFreeDualQueue<T> {
      */
     public void enqueue(T v) {
         QNode<T> node = new QNode<>(v, NodeType.DATUM);
+        int attempts = 0;
+        long firstRetry = 0;
         while(true){
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
             QNode<T> observedTail = tail.get();
             QNode<T> observedHead = head.get();
             if (observedTail == observedHead || !observedTail.type.equals(NodeType.REQUEST)){
                 // queue empty, tail falling behind, or queue contains data
                 // (queue could also contain exactly one outstanding request with
                 // tail pointer as yet unswung)
-                QNode<T> observedNext = observedTail.next.get();
+                QNode<T> observedNext = observedTail.next;
                 if (observedTail == tail.get()){
                     if (observedNext != null){
-                        tail.compareAndSet(observedTail, observedNext);
+                        if (tail.compareAndSet(observedTail, observedNext))
+                            help("enqueue");
                     } else{ // tenta adicionar o novo elemento à lista
-                        if (observedTail.next.compareAndSet(null, node)){
+                        if (NEXT.compareAndSet(observedTail, (QNode<T>) null, node)){
                             tail.compareAndSet(observedTail, node);
+                            if (attempts > 1)
+                                contention("enqueue", attempts, firstRetry);
+                            enqueues.increment();
+                            Runnable listener = nonEmptyListener;
+                            if (listener != null && observedTail == head.get())    // a fila não tinha dados
+                                listener.run();
                             return;
                         }
                     }
                 }
             } else{ // a lista consiste em elementos do tipo Request
-                QNode<T> observedNext = observedHead.next.get();
+                QNode<T> observedNext = observedHead.next;
                 if (observedTail == tail.get()){
-                    QNode<T> observedRequest = observedHead.request.get();
+                    QNode<T> observedRequest = observedHead.request;
                     if (observedHead == head.get()){
-                        boolean success = (observedRequest == null && observedHead.request.compareAndSet(null, node));
-                        head.compareAndSet(observedHead, observedNext);
-                        if (success)
+                        boolean success = (observedRequest == null && REQUEST.compareAndSet(observedHead, (QNode<T>) null, node));
+                        if (head.compareAndSet(observedHead, observedNext) && !success)
+                            help("enqueue");    // removed a request fulfilled by another producer or cancelled
+                        if (success) {
+                            LockSupport.unpark(observedNext.waiter);
+                            if (attempts > 1)
+                                contention("enqueue", attempts, firstRetry);
+                            enqueues.increment();
                             return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Regista o listener chamado, na thread do produtor, quando um enqueue liga um dado a uma fila sem dados. Os
+     * dados entregues directamente a um pedido não chamam o listener, porque já têm um consumidor
+     * @param listener
+     */
+    public void setNonEmptyListener(Runnable listener) {
+        nonEmptyListener = listener;
+    }
+
+    /**
+     * Retira um dado caso exista, sem nunca ligar um pedido à fila
+     * @return o dado retirado ou null caso a fila não tenha dados
+     */
+    public T tryDequeue() {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            QNode<T> h = head.get(), t = tail.get();
+            if (t == h || t.type == NodeType.REQUEST) {
+                QNode<T> tnext = t.next;
+                if (t == tail.get()) {
+                    if (tnext == null || t.type == NodeType.REQUEST)
+                        return null;    // fila vazia ou só com pedidos
+                    if (tail.compareAndSet(t, tnext))    // tail falling behind
+                        help("tryDequeue");
+                }
+            } else {    // queue consists of real data
+                QNode<T> hnext = h.next;
+                if (t == tail.get()) {
+                    T result = hnext.data;
+                    if (head.compareAndSet(h, hnext)) {
+                        if (attempts > 1)
+                            contention("tryDequeue", attempts, firstRetry);
+                        dequeues.increment();
+                        return result;
                     }
                 }
             }
         }
     }
 
-    // dequeue a datum - spinning if necessary
+    /**
+     * Retira até max dados, sem nunca ligar um pedido à fila. Tal como o drainTo da ConcurrentQueue, o consumidor
+     * percorre os nós de dados a partir da cabeça e retira-os todos com um único compareAndSet sobre o head. O
+     * percurso pára na cauda observada, para que o head nunca passe à frente do tail
+     * @param target a colecção onde são colocados os dados retirados
+     * @param max o número máximo de dados a retirar
+     * @return o número de dados retirados, 0 caso a fila não tenha dados
+     */
+    public int drainTo(Collection<? super T> target, int max) {
+        if (max <= 0)
+            return 0;
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            QNode<T> h = head.get(), t = tail.get();
+            if (t == h || t.type == NodeType.REQUEST) {
+                QNode<T> tnext = t.next;
+                if (t == tail.get()) {
+                    if (tnext == null || t.type == NodeType.REQUEST)
+                        return 0;    // fila vazia ou só com pedidos
+                    if (tail.compareAndSet(t, tnext))    // tail falling behind
+                        help("drainTo");
+                }
+            } else {    // queue consists of real data
+                QNode<T> first = h.next;
+                if (t == tail.get()) {
+                    QNode<T> last = first, next;
+                    int count = 1;
+                    while (count < max && last != t && (next = last.next) != null) {
+                        last = next;
+                        count++;
+                    }
+                    if (head.compareAndSet(h, last)) {
+                        if (attempts > 1)
+                            contention("drainTo", attempts, firstRetry);
+                        dequeues.add(count);
+                        for (QNode<T> node = first; ; node = node.next) {
+                            target.add(node.data);
+                            if (node == last)
+                                return count;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retira até max dados, esperando caso a fila não tenha nenhum. Os dados disponíveis são retirados com o
+     * drainTo; caso não exista nenhum o consumidor liga um único pedido à fila, espera que seja satisfeito como no
+     * dequeue e depois retira com o drainTo, sem esperar, os dados que entretanto tenham chegado, até max
+     * @param target a colecção onde são colocados os dados retirados
+     * @param max o número máximo de dados a retirar
+     * @return o número de dados retirados, pelo menos 1 quando max é positivo
+     * @throws InterruptedException
+     */
+    public int dequeue(Collection<? super T> target, int max) throws InterruptedException {
+        if (max <= 0)
+            return 0;
+        int count = drainTo(target, max);
+        if (count > 0)
+            return count;
+        target.add(dequeue());
+        return 1 + drainTo(target, max - 1);
+    }
+
+    /**
+     * Retira um dado, esperando caso a fila não tenha dados. O consumidor liga um pedido à fila e espera que um
+     * produtor coloque o dado no request do nó anterior; a espera é feita com LockSupport.park e o produtor que
+     * satisfaz o pedido acorda apenas esse consumidor, pelo que os consumidores à espera não ocupam o processador
+     * @return o dado retirado
+     * @throws InterruptedException caso a thread seja interrompida antes de o pedido ser satisfeito; o pedido é
+     * cancelado e nenhum dado é perdido
+     */
     public T dequeue() throws InterruptedException {
+        return dequeue(false, 0);
+    }
+
+    /**
+     * Igual ao dequeue, mas desiste quando passa o timeout. Tal como na fila dual com timeout de Scherer e Scott, o
+     * pedido abandonado é cancelado colocando no seu request o nó CANCELLED, e os produtores passam-lhe à frente como
+     * se já tivesse sido satisfeito
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o dado retirado ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        if (timeout <= 0)
+            return tryDequeue();    // não vale a pena ligar um pedido que seria logo cancelado
+        return dequeue(true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+    }
+
+    // dequeue a datum - parking if necessary
+    private T dequeue(boolean timed, long deadline) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
         QNode<T> h, hnext, t, tnext, n = null;
+        int attempts = 0;
+        long firstRetry = 0;
         do {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
             h = head.get();
             t = tail.get();
 
             if (t == h || t.type == NodeType.REQUEST) {
                 // queue empty, tail falling behind, or queue contains data (queue could also
                 // contain exactly one outstanding request with tail pointer as yet unswung)
-                tnext = t.next.get();
+                tnext = t.next;
 
                 if (t == tail.get()) {		// tail and next are consistent
                     if (tnext != null) {	// tail falling behind
-                        tail.compareAndSet(t, tnext);
+                        if (tail.compareAndSet(t, tnext))
+                            help("dequeue");
                     } else {	// try to link in a request for data
                         if (n == null) {
                             n = new QNode<T>(null, NodeType.REQUEST);
+                            n.waiter = Thread.currentThread();
                         }
-                        if (t.next.compareAndSet(null, n)) {
+                        if (NEXT.compareAndSet(t, (QNode<T>) null, n)) {
                             // linked in request; now try to swing tail pointer
                             tail.compareAndSet(t, n);
+                            if (attempts > 1)
+                                contention("dequeue", attempts, firstRetry);
 
                             // help someone else if I need to
-                            if (h == head.get() && h.request.get() != null) {
-                                head.compareAndSet(h, h.next.get());
+                            if (h == head.get() && h.request != null) {
+                                if (head.compareAndSet(h, h.next))
+                                    help("dequeue");
                             }
-
-                            // busy waiting for a data done.
-                            // we use sleep instead of yield in order to accept interrupts
-                            while (t.request.get() == null) {
-                                Thread.sleep(0);  // spin accepting interrupts!!!
-                            }
-
-                            // help snip my node
-                            h = head.get();
-                            if (h == t) {
-                                head.compareAndSet(h, n);
-                            }
-
-                            // data is now available; read it out and go home
-                            return t.request.get().data;
+                            return awaitFulfilment(t, n, timed, deadline);
                         }
                     }
                 }
             } else {    // queue consists of real data
-                hnext = h.next.get();
+                hnext = h.next;
                 if (t == tail.get()) {
                     // head and next are consistent; read result *before* swinging head
                     T result = hnext.data;
                     if (head.compareAndSet(h, hnext)) {
+                        if (attempts > 1)
+                            contention("dequeue", attempts, firstRetry);
+                        dequeues.increment();
                         return result;
                     }
                 }
@@ -137,11 +317,94 @@ public class LockFreeDualQueue<T> {
         } while (true);
     }
 
+    /**
+     * Espera que o pedido n, ligado depois de t, seja satisfeito. Ao fim de SPINS iterações a thread é parada até o
+     * produtor a acordar, até ao deadline ou até ser interrompida. No timeout e na interrupção o pedido é cancelado
+     * com um compareAndSet do request de null para CANCELLED; caso esse compareAndSet falhe um produtor satisfez
+     * entretanto o pedido e o dado é retornado, repondo a interrupção
+     * @return o dado recebido, ou null caso o pedido tenha sido cancelado por timeout
+     * @throws InterruptedException caso o pedido tenha sido cancelado por interrupção
+     */
+    private T awaitFulfilment(QNode<T> t, QNode<T> n, boolean timed, long deadline) throws InterruptedException {
+        QueueEvents.RequestFulfilled fulfilled = new QueueEvents.RequestFulfilled();
+        fulfilled.begin();
+        boolean interrupted = false;
+        int spins = SPINS;
+        QNode<T> request;
+        while ((request = t.request) == null) {
+            if (spins > 0) {
+                spins--;
+                Thread.onSpinWait();
+                continue;
+            }
+            if (Thread.interrupted()) {
+                interrupted = true;
+                break;
+            }
+            if (timed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        if (request == null && REQUEST.compareAndSet(t, (QNode<T>) null, CANCELLED)) {
+            snip(t, n);
+            if (interrupted)
+                throw new InterruptedException();
+            return null;
+        }
+        fulfilled.commit();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        snip(t, n);
+        // data is now available; read it out and go home
+        dequeues.increment();
+        return t.request.data;
+    }
+
+    // help snip my node
+    private void snip(QNode<T> t, QNode<T> n) {
+        if (head.get() == t)
+            head.compareAndSet(t, n);
+    }
+
+    /**
+     * Número aproximado de dados na fila, calculado em O(1) a partir dos contadores de enqueue e dequeue. Enquanto
+     * existirem pedidos por satisfazer a fila não tem dados e o resultado é 0
+     * @return
+     */
+    public int size() {
+        long size = enqueues.sum() - dequeues.sum();
+        return size <= 0 ? 0 : (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return os contadores de contenção da fila, ou null caso a propriedade queue.statistics não esteja activa
+     */
+    public QueueStatistics statistics() {
+        return statistics;
+    }
+
+    private void contention(String operation, int attempts, long firstRetry) {
+        QueueEvents.contention("LockFreeDualQueue", operation, attempts - 1, firstRetry);
+        if (statistics != null)
+            statistics.casFailures(operation, attempts - 1);
+    }
+
+    private void help(String operation) {
+        if (statistics != null)
+            statistics.help(operation);
+    }
+
     /**
      * Verifica se a lista não contém elemento, usando para isso a mesma condição que o método dequeue
      * @return
      */
     public boolean isEmpty() {
-        return head.get().next.get() == null || head.get().next.get().type == NodeType.REQUEST;
+        return head.get().next == null || head.get().next.type == NodeType.REQUEST;
     }
 }
\ No newline at end of file
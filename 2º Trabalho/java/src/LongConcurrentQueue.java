@@ -0,0 +1,72 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Versão da ConcurrentQueue para valores long. O valor é guardado directamente no nó, pelo que cada elemento custa
+ * uma única alocação e não há boxing. Como null deixa de poder indicar que a fila está vazia, o tryTake entrega o
+ * valor a um LongConsumer e retorna se existia algum elemento. O algoritmo é o da AbstractPrimitiveLinkedQueue,
+ * partilhado com a IntConcurrentQueue.
+ */
+public class LongConcurrentQueue extends AbstractPrimitiveLinkedQueue {
+    private static final class LongNode extends Node {
+        final long value;
+
+        LongNode(long value) {
+            this.value = value;
+        }
+    }
+
+    public LongConcurrentQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    public LongConcurrentQueue(WaitStrategy waitStrategy) {
+        super(waitStrategy, new LongNode(0));
+    }
+
+    /**
+     * Igual ao put da ConcurrentQueue
+     * @param value
+     */
+    public void put(long value) {
+        link(new LongNode(value));
+    }
+
+    /**
+     * Tenta retirar o primeiro elemento da fila sem esperar
+     * @param action recebe o valor retirado, caso exista
+     * @return true caso tenha sido retirado um elemento, false caso a fila esteja vazia
+     */
+    public boolean tryTake(LongConsumer action) {
+        Node node = unlink();
+        if (node == null)
+            return false;
+        action.accept(((LongNode) node).value);
+        return true;
+    }
+
+    /**
+     * Retira o primeiro elemento da fila, esperando segundo a estratégia de espera enquanto a fila estiver vazia
+     * @return o valor retirado
+     * @throws InterruptedException
+     */
+    public long dequeue() throws InterruptedException {
+        return ((LongNode) awaitUnlink()).value;
+    }
+
+    /**
+     * Igual ao dequeue, mas desiste caso a fila continue vazia depois de passar o timeout
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @param action recebe o valor retirado, caso exista
+     * @return true caso tenha sido retirado um elemento, false caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public boolean dequeue(long timeout, LongConsumer action) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!tryTake(action)) {
+            if (!awaitNotEmpty(deadline))
+                return tryTake(action);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Fila ilimitada para vários produtores e um único consumidor, segundo a fila MPSC de Dmitry Vyukov. Cada produtor
+ * reserva o seu lugar com um único getAndSet sobre o tail, que nunca falha, e liga depois o nó anterior ao seu com
+ * uma escrita release. O consumidor é o único a alterar o head, pelo que avança sem compareAndSet. Entre o getAndSet
+ * e a ligação de um produtor o consumidor pode ver a fila como vazia, mesmo que existam elementos depois desse nó;
+ * esses elementos ficam visíveis assim que a ligação é feita.
+ */
+public class MpscQueue<T> extends AbstractLinkedQueue<T> {
+    private final PaddedAtomicReference<Node<T>> head, tail;
+
+    public MpscQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    public MpscQueue(WaitStrategy waitStrategy) {
+        super(waitStrategy);
+        Node<T> dummy = new Node<>(null);
+        head = new PaddedAtomicReference<>(dummy);
+        tail = new PaddedAtomicReference<>(dummy);
+    }
+
+    public void put(T elem) {
+        Node<T> node = new Node<>(elem);
+        Node<T> previous = tail.getAndSet(node);
+        NEXT.setRelease(previous, node);
+        signal();
+    }
+
+    /**
+     * Só pode ser chamado pelo consumidor
+     * @return o elemento retirado ou null caso a fila esteja vazia
+     */
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        Node<T> first = head.getPlain();
+        Node<T> node = (Node<T>) NEXT.getAcquire(first);
+        if (node == null)
+            return null;
+        T value = node.value;
+        node.value = null;
+        head.lazySet(node);
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return NEXT.getAcquire(head.get()) == null;
+    }
+}
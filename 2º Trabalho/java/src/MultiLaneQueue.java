@@ -0,0 +1,123 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fila com FIFO relaxado formada por várias ConcurrentQueue (lanes). Cada produtor coloca sempre os seus elementos na
+ * mesma lane, escolhida a partir do id da thread, pelo que a ordem dos elementos de cada produtor é mantida, mas não
+ * existe ordem global entre produtores. Cada consumidor escolhe duas lanes ao acaso e retira da que tem mais
+ * elementos (power of two choices); caso ambas estejam vazias percorre as restantes lanes a partir de uma posição
+ * aleatória, roubando o primeiro elemento que encontrar. Produtores e consumidores ficam assim espalhados por vários
+ * head e tail em vez de disputarem os mesmos dois.
+ */
+public class MultiLaneQueue<T> implements SimpleQueue<T> {
+    private final ConcurrentQueue<T>[] lanes;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    public MultiLaneQueue() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public MultiLaneQueue(int lanes) {
+        this(lanes, WaitStrategy.yielding());
+    }
+
+    /**
+     * @param lanes o número de lanes
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar que a fila tenha elementos
+     */
+    public MultiLaneQueue(int lanes, WaitStrategy waitStrategy) {
+        if (lanes <= 0)
+            throw new IllegalArgumentException("lanes must be positive");
+        this.lanes = newLanes(lanes);
+        // as lanes não precisam de avisar ninguém, a espera é feita sobre a fila inteira
+        for (int i = 0; i < lanes; i++)
+            this.lanes[i] = new ConcurrentQueue<>(WaitStrategy.busySpin());
+        this.waitStrategy = waitStrategy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ConcurrentQueue<T>[] newLanes(int length) {
+        return (ConcurrentQueue<T>[]) new ConcurrentQueue<?>[length];
+    }
+
+    public int lanes() {
+        return lanes.length;
+    }
+
+    /**
+     * @return a lane do produtor, obtida espalhando o id da thread com a constante de Fibonacci
+     */
+    int laneOf(Thread thread) {
+        long hash = thread.getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 32) % lanes.length);
+    }
+
+    public void put(T elem) {
+        lanes[laneOf(Thread.currentThread())].put(elem);
+        waitStrategy.signal();
+    }
+
+    public T tryTake() {
+        int n = lanes.length;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(n);
+        if (n > 1) {
+            int second = random.nextInt(n - 1);
+            if (second >= first)
+                second++;
+            ConcurrentQueue<T> chosen = lanes[first].size() >= lanes[second].size() ? lanes[first] : lanes[second];
+            T value = chosen.tryTake();
+            if (value != null)
+                return value;
+        }
+        for (int i = 0; i < n; i++) {
+            T value = lanes[(first + i) % n].tryTake();
+            if (value != null)
+                return value;
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        for (ConcurrentQueue<T> lane : lanes) {
+            if (!lane.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a soma dos tamanhos aproximados das lanes
+     */
+    public int size() {
+        long size = 0;
+        for (ConcurrentQueue<T> lane : lanes)
+            size += lane.size();
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
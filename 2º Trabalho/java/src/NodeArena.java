@@ -0,0 +1,193 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arena de nós reutilizáveis das filas com reciclagem (RecyclingConcurrentQueue e RecyclingLockFreeDualQueue). Os nós
+ * não são objectos: cada nó é um índice em arrays de blocos de CHUNK_SIZE posições, com o valor, o next e, na fila
+ * dual, o request. Os blocos só são criados quando a arena cresce, pelo que em regime estável as filas não alocam.
+ *
+ * As referências entre nós são longs com carimbo, como os counted pointers (cptr/ctptr) do pseudocódigo de Scherer e
+ * Scott em LockFreeDualQueue_.java: os 32 bits de menor peso são o índice do nó (NIL quando não há nó), o bit 32
+ * indica se o nó referido é um pedido (o is_request do ctptr) e os restantes 31 bits são um número de sequência que é
+ * incrementado em cada escrita. No request o índice pode ainda ser CANCELLED, quando o consumidor desistiu do pedido.
+ * Um nó reciclado nunca volta a ter a mesma referência, pelo que um compareAndSet de uma thread atrasada, que ainda
+ * tem a referência antiga, falha em vez de sofrer o problema ABA.
+ *
+ * Os nós libertados vão para a lista de livres da thread. Quando essa lista chega a SPILL nós é passada inteira, com
+ * um único compareAndSet, para uma lista partilhada, de onde as threads que só alocam (os produtores) a retiram
+ * também inteira com um getAndSet. A lista partilhada só tem estas duas operações, que não sofrem de ABA. Os nós que
+ * ficam na lista de uma thread que termina não voltam a ser usados.
+ */
+final class NodeArena {
+    static final int NIL = -1;
+    // índice colocado no request de um nó cujo pedido foi cancelado; nunca é um nó da arena
+    static final int CANCELLED = -2;
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int SPILL = 64;
+    private static final long REQUEST = 1L << 32;
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final class Chunk {
+        final Object[] values = new Object[CHUNK_SIZE];
+        final long[] next = new long[CHUNK_SIZE];
+        final long[] request;
+
+        Chunk(boolean dual) {
+            request = dual ? new long[CHUNK_SIZE] : null;
+        }
+    }
+
+    /**
+     * Lista de livres de uma thread: os nós que a thread libertou (freed, ainda não passados à lista partilhada) e os
+     * que retirou da lista partilhada (reused). Ambas as listas estão ligadas pelo next dos próprios nós
+     */
+    private static final class FreeList {
+        int freedHead = NIL, freedTail = NIL, freedCount;
+        int reused = NIL;
+    }
+
+    private volatile Chunk[] chunks = new Chunk[4];
+    private final boolean dual;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicInteger shared = new AtomicInteger(NIL);
+    private final ThreadLocal<FreeList> freeLists = ThreadLocal.withInitial(FreeList::new);
+
+    /**
+     * @param dual indica se os nós têm o campo request da fila dual
+     */
+    NodeArena(boolean dual) {
+        this.dual = dual;
+    }
+
+    static int index(long reference) {
+        return (int) reference;
+    }
+
+    static boolean isRequest(long reference) {
+        return (reference & REQUEST) != 0;
+    }
+
+    /**
+     * @return a referência que substitui previous, com o número de sequência seguinte
+     */
+    static long successor(long previous, int index, boolean request) {
+        return ((previous >>> 33) + 1) << 33 | (request ? REQUEST : 0) | (index & 0xFFFFFFFFL);
+    }
+
+    private Chunk chunk(int index) {
+        Chunk[] current = chunks;
+        int c = index >>> CHUNK_SHIFT;
+        Chunk chunk;
+        if (c < current.length && (chunk = current[c]) != null)
+            return chunk;
+        return addChunk(c);
+    }
+
+    private synchronized Chunk addChunk(int c) {
+        Chunk[] current = chunks;
+        if (c >= current.length)
+            current = Arrays.copyOf(current, Math.max(current.length * 2, c + 1));
+        if (current[c] == null)
+            current[c] = new Chunk(dual);
+        chunks = current;
+        return current[c];
+    }
+
+    /**
+     * Obtém um nó livre, primeiro da lista da thread, depois da lista partilhada e só por fim criando um nó novo. O
+     * next e o request do nó ficam a NIL, com um novo número de sequência
+     */
+    int allocate() {
+        FreeList free = freeLists.get();
+        int node;
+        if (free.freedHead != NIL) {
+            node = free.freedHead;
+            free.freedHead = index(next(node));
+            if (--free.freedCount == 0)
+                free.freedTail = NIL;
+        } else {
+            if (free.reused == NIL && shared.get() != NIL)
+                free.reused = shared.getAndSet(NIL);
+            if (free.reused != NIL) {
+                node = free.reused;
+                free.reused = index(next(node));
+            } else {
+                node = allocated.getAndIncrement();
+                if (node < 0)
+                    throw new IllegalStateException("node arena exhausted");
+            }
+        }
+        Chunk chunk = chunk(node);
+        int offset = node & (CHUNK_SIZE - 1);
+        LONGS.setRelease(chunk.next, offset, successor(chunk.next[offset], NIL, false));
+        if (dual)
+            LONGS.setRelease(chunk.request, offset, successor(chunk.request[offset], NIL, false));
+        return node;
+    }
+
+    /**
+     * Devolve o nó à lista de livres da thread. Só pode ser chamado quando o nó já não é acessível a partir da fila;
+     * as threads atrasadas que ainda o estejam a ler detectam a reutilização pelos números de sequência
+     */
+    void free(int node) {
+        FreeList free = freeLists.get();
+        value(node, null);
+        link(node, free.freedHead);
+        if (free.freedHead == NIL)
+            free.freedTail = node;
+        free.freedHead = node;
+        if (++free.freedCount == SPILL) {
+            int observed;
+            do {
+                observed = shared.get();
+                link(free.freedTail, observed);
+            } while (!shared.compareAndSet(observed, free.freedHead));
+            free.freedHead = free.freedTail = NIL;
+            free.freedCount = 0;
+        }
+    }
+
+    private void link(int node, int next) {
+        Chunk chunk = chunk(node);
+        int offset = node & (CHUNK_SIZE - 1);
+        LONGS.setRelease(chunk.next, offset, successor(chunk.next[offset], next, false));
+    }
+
+    /**
+     * @return o número de nós criados pela arena desde o início
+     */
+    int allocated() {
+        return allocated.get();
+    }
+
+    Object value(int node) {
+        return chunk(node).values[node & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Escrita simples: o valor é publicado pelo compareAndSet que liga o nó à fila
+     */
+    void value(int node, Object value) {
+        chunk(node).values[node & (CHUNK_SIZE - 1)] = value;
+    }
+
+    long next(int node) {
+        return (long) LONGS.getVolatile(chunk(node).next, node & (CHUNK_SIZE - 1));
+    }
+
+    boolean casNext(int node, long expected, long update) {
+        return LONGS.compareAndSet(chunk(node).next, node & (CHUNK_SIZE - 1), expected, update);
+    }
+
+    long request(int node) {
+        return (long) LONGS.getVolatile(chunk(node).request, node & (CHUNK_SIZE - 1));
+    }
+
+    boolean casRequest(int node, long expected, long update) {
+        return LONGS.compareAndSet(chunk(node).request, node & (CHUNK_SIZE - 1), expected, update);
+    }
+}
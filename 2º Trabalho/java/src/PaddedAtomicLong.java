@@ -0,0 +1,16 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AtomicLong ocupando pelo menos uma linha de cache, tal como a PaddedAtomicReference, para que os índices de
+ * produtores e consumidores das filas não partilhem a mesma linha de cache.
+ */
+public class PaddedAtomicLong extends AtomicLong {
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+
+    public PaddedAtomicLong(long initialValue) {
+        super(initialValue);
+    }
+}
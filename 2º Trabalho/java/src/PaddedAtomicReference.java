@@ -0,0 +1,17 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * AtomicReference ocupando pelo menos uma linha de cache (64 bytes). Os campos de uma subclasse são colocados depois
+ * dos campos da superclasse, pelo que o valor fica seguido de 56 bytes de padding e duas instâncias alocadas
+ * seguidas (como o head e o tail das filas) nunca partilham a mesma linha de cache.
+ */
+public class PaddedAtomicReference<V> extends AtomicReference<V> {
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+
+    public PaddedAtomicReference(V initialValue) {
+        super(initialValue);
+    }
+}
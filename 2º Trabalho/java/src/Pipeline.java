@@ -0,0 +1,419 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Pipeline de processamento por etapas (SEDA). Cada etapa tem a sua fila de entrada (ConcurrentQueue) e um número
+ * máximo de tarefas a correr em simultâneo no SimpleThreadPoolExecutor partilhado, pelo que uma etapa lenta não
+ * consegue ocupar as threads das restantes. As etapas são ligadas entre si formando um grafo acíclico: cada resultado
+ * de uma etapa é colocado na fila de todas as etapas seguintes.
+ */
+public class Pipeline {
+    private static final int DISPATCH_RETRY_INTERVAL = 1;
+
+    private final SimpleThreadPoolExecutor threadPool;
+    private final List<Stage<?, ?>> stages = new CopyOnWriteArrayList<>();
+    private final AtomicLong inFlight = new AtomicLong();   // elementos colocados numa fila e ainda não processados
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition quiescent = lock.newCondition();
+    // etapas com uma tarefa reservada (active) que o ThreadPool não aceitou, à espera de nova tentativa
+    private final ConcurrentLinkedQueue<Stage<?, ?>> pendingDispatch = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean retrying = new AtomicBoolean();
+
+    public Pipeline(SimpleThreadPoolExecutor threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Cria uma nova etapa
+     * @param name o nome da etapa, usado nas métricas
+     * @param threads o número máximo de tarefas da etapa a executar em simultâneo no ThreadPool
+     * @param batchSize o número máximo de elementos retirados da fila de uma só vez por cada tarefa
+     * @param handler a função a aplicar a cada elemento; quando retorna null nada é passado às etapas seguintes
+     */
+    public <I, O> Stage<I, O> stage(String name, int threads, int batchSize, Function<? super I, ? extends O> handler) {
+        if (threads <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("threads and batchSize must be positive");
+        Stage<I, O> stage = new Stage<>(name, threads, batchSize, handler);
+        stages.add(stage);
+        return stage;
+    }
+
+    public List<Stage<?, ?>> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * @return a etapa com maior número de elementos à espera na fila, ou seja, a candidata a receber mais threads
+     */
+    public Stage<?, ?> bottleneck() {
+        Stage<?, ?> result = null;
+        for (Stage<?, ?> stage : stages) {
+            if (result == null || stage.depth.get() > result.depth.get())
+                result = stage;
+        }
+        return result;
+    }
+
+    /**
+     * Espera até que todos os elementos colocados no pipeline tenham sido processados por todas as etapas
+     * @param timeout o tempo máximo de espera
+     * @return true caso o pipeline tenha ficado sem trabalho, false caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public boolean awaitQuiescence(int timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight.get() == 0)
+                return true;
+            if (Timeouts.noWait(timeout))
+                return false;
+
+            long t = Timeouts.start(timeout);
+            long remaining = Timeouts.remaining(t);
+            while (true) {
+                quiescent.await(remaining, TimeUnit.MILLISECONDS);
+                if (inFlight.get() == 0)
+                    return true;
+                remaining = Timeouts.remaining(t);
+                if (Timeouts.isTimeout(remaining))
+                    return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void completed(long elements) {
+        if (inFlight.addAndGet(-elements) == 0) {
+            lock.lock();
+            try {
+                quiescent.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Guarda a etapa para nova tentativa de entrega ao ThreadPool, mantendo a tarefa reservada. As novas tentativas
+     * são feitas por uma thread própria, criada quando a primeira etapa fica pendente e que termina quando não
+     * restam etapas pendentes, à semelhança do pendingDispatch do KeyValueServer; assim a thread que coloca um
+     * elemento nunca executa o trabalho de outra etapa
+     */
+    private void deferDispatch(Stage<?, ?> stage) {
+        pendingDispatch.add(stage);
+        if (retrying.compareAndSet(false, true)) {
+            Thread retry = new Thread(this::retryDispatch, "pipeline-dispatch");
+            retry.setDaemon(true);
+            retry.start();
+        }
+    }
+
+    private void retryDispatch() {
+        while (true) {
+            Stage<?, ?> stage;
+            while ((stage = pendingDispatch.poll()) != null) {
+                try {
+                    if (!threadPool.execute(stage::work, DISPATCH_RETRY_INTERVAL))
+                        pendingDispatch.add(stage);
+                } catch (InterruptedException e) {
+                    pendingDispatch.add(stage);
+                } catch (RejectedExecutionException e) {
+                    stage.active.decrementAndGet();    // o ThreadPool foi encerrado, a tarefa nunca vai correr
+                }
+            }
+            retrying.set(false);
+            // uma etapa pode ter ficado pendente depois do último poll e antes de retrying passar a false
+            if (pendingDispatch.isEmpty() || !retrying.compareAndSet(false, true))
+                return;
+        }
+    }
+
+    /**
+     * Elemento guardado na fila de uma etapa, juntamente com o instante em que foi colocado, para medir o tempo de
+     * espera na fila
+     */
+    private static class Envelope<T> {
+        private final T item;
+        private final long enqueued;
+
+        private Envelope(T item) {
+            this.item = item;
+            enqueued = System.nanoTime();
+        }
+    }
+
+    /**
+     * Etapa do pipeline. As tarefas da etapa não ficam à espera de trabalho: cada tarefa esvazia a fila em lotes de
+     * batchSize elementos e termina quando a encontra vazia, sendo lançada nova tarefa quando chegam elementos e o
+     * número de tarefas activas é inferior ao permitido
+     */
+    public class Stage<I, O> {
+        private final String name;
+        private final int batchSize;
+        private final Function<? super I, ? extends O> handler;
+        private final ConcurrentQueue<Envelope<I>> input = new ConcurrentQueue<>();
+        private final List<Stage<? super O, ?>> successors = new CopyOnWriteArrayList<>();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong depth = new AtomicLong();
+        private final LongAdder processed = new LongAdder(), failed = new LongAdder();
+        private final LongAdder waitTime = new LongAdder(), serviceTime = new LongAdder();
+        private volatile int threads;
+
+        private Stage(String name, int threads, int batchSize, Function<? super I, ? extends O> handler) {
+            this.name = name;
+            this.threads = threads;
+            this.batchSize = batchSize;
+            this.handler = handler;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Liga esta etapa à etapa next, passando todos os resultados desta etapa a next. Não são permitidas ligações
+         * que formem ciclos
+         * @return a etapa next, para permitir encadear chamadas
+         */
+        public <S extends Stage<? super O, ?>> S to(S next) {
+            Stage<?, ?> stage = next;
+            if (stage.reaches(this))
+                throw new IllegalArgumentException("linking " + name + " to " + stage.name + " would create a cycle");
+            successors.add(next);
+            return next;
+        }
+
+        private boolean reaches(Stage<?, ?> target) {
+            if (this == target)
+                return true;
+            for (Stage<?, ?> successor : successors) {
+                if (successor.reaches(target))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Coloca um elemento na fila da etapa e, caso haja threads disponíveis para a etapa, lança uma nova tarefa
+         */
+        public void put(I item) {
+            inFlight.incrementAndGet();
+            depth.incrementAndGet();
+            input.put(new Envelope<>(item));
+            schedule();
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Altera o número de tarefas da etapa que podem executar em simultâneo. Quando o número diminui as tarefas em
+         * excesso terminam no fim do lote actual; quando aumenta são lançadas novas tarefas caso exista trabalho
+         */
+        public void setThreads(int threads) {
+            if (threads <= 0)
+                throw new IllegalArgumentException("threads must be positive");
+            this.threads = threads;
+            schedule();
+        }
+
+        /**
+         * Lança uma tarefa caso a fila tenha elementos e o número de tarefas activas seja inferior ao permitido. Caso
+         * o ThreadPool não tenha threads disponíveis a tarefa continua reservada e a entrega é repetida mais tarde
+         * (deferDispatch): executá-la na thread actual faria o produtor, ou a tarefa da etapa anterior, processar a
+         * fila desta etapa, sem limite e fora das threads que lhe são atribuídas
+         * @throws RejectedExecutionException caso o ThreadPool tenha sido encerrado
+         */
+        private void schedule() {
+            while (!input.isEmpty()) {
+                int observed = active.get();
+                if (observed >= threads)
+                    return;
+                if (!active.compareAndSet(observed, observed + 1))
+                    continue;
+
+                boolean dispatched = false;
+                try {
+                    dispatched = threadPool.execute(this::work, 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RejectedExecutionException e) {
+                    active.decrementAndGet();
+                    throw e;
+                }
+                if (!dispatched)
+                    deferDispatch(this);
+                return;
+            }
+        }
+
+        private void work() {
+            List<Envelope<I>> batch = new ArrayList<>(batchSize);
+            try {
+                while (true) {
+                    int observed = active.get();
+                    if (observed > threads) {
+                        if (active.compareAndSet(observed, observed - 1))
+                            break;
+                        continue;
+                    }
+
+                    batch.clear();
+                    Envelope<I> envelope;
+                    while (batch.size() < batchSize && (envelope = input.tryTake()) != null)
+                        batch.add(envelope);
+                    if (batch.isEmpty()) {
+                        active.decrementAndGet();
+                        break;
+                    }
+                    depth.addAndGet(-batch.size());
+
+                    // a fila ainda tem trabalho: lança mais uma tarefa, se houver threads disponíveis para a etapa
+                    if (!input.isEmpty() && active.get() < threads)
+                        scheduleFromTask();
+
+                    process(batch);
+                }
+            } catch (RuntimeException e) {
+                active.decrementAndGet();
+                throw e;
+            } catch (Error e) {
+                // a thread do ThreadPool termina com o erro; a tarefa é substituída por outra, que fica com a sua
+                // reserva, para que os elementos que ficaram na fila não esperem pelo próximo put
+                deferDispatch(this);
+                throw e;
+            }
+
+            // um elemento pode ter sido colocado depois da última tentativa de retirar da fila
+            scheduleFromTask();
+        }
+
+        /**
+         * O schedule chamado dentro de uma tarefa da etapa. Caso o ThreadPool tenha sido encerrado a etapa deixa de
+         * lançar tarefas, mas a excepção não é propagada: a tarefa em curso continua a esvaziar a fila, e a thread do
+         * ThreadPool não termina a meio por causa de uma tarefa que não chegou a ser lançada. O schedule já devolveu
+         * a reserva da tarefa rejeitada
+         */
+        private void scheduleFromTask() {
+            try {
+                schedule();
+            } catch (RejectedExecutionException e) {
+                // etapa encerrada
+            }
+        }
+
+        /**
+         * Processa o lote. Os elementos do lote deixam de contar como em curso mesmo que o handler lance um Error,
+         * caso em que os restantes elementos do lote são descartados, para que o awaitQuiescence não fique à espera
+         * deles
+         */
+        private void process(List<Envelope<I>> batch) {
+            long start = System.nanoTime();
+            try {
+                for (Envelope<I> envelope : batch) {
+                    waitTime.add(start - envelope.enqueued);
+                    try {
+                        O result = handler.apply(envelope.item);
+                        if (result != null) {
+                            for (Stage<? super O, ?> successor : successors)
+                                successor.put(result);
+                        }
+                        processed.increment();
+                    } catch (RuntimeException e) {
+                        failed.increment();
+                    }
+                }
+            } finally {
+                serviceTime.add(System.nanoTime() - start);
+                completed(batch.size());
+            }
+        }
+
+        public StageMetrics getMetrics() {
+            return new StageMetrics(name, threads, active.get(), Math.max(0, depth.get()), processed.sum(),
+                    failed.sum(), waitTime.sum(), serviceTime.sum());
+        }
+    }
+
+    /**
+     * Fotografia das métricas de uma etapa
+     */
+    public static class StageMetrics {
+        private final String name;
+        private final int threads, activeThreads;
+        private final long queueDepth, processed, failed, waitTime, serviceTime;
+
+        private StageMetrics(String name, int threads, int activeThreads, long queueDepth, long processed,
+                             long failed, long waitTime, long serviceTime) {
+            this.name = name;
+            this.threads = threads;
+            this.activeThreads = activeThreads;
+            this.queueDepth = queueDepth;
+            this.processed = processed;
+            this.failed = failed;
+            this.waitTime = waitTime;
+            this.serviceTime = serviceTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return o tempo médio, em nanosegundos, que cada elemento esteve na fila da etapa
+         */
+        public double getAverageWaitTime() {
+            long total = processed + failed;
+            return total == 0 ? 0 : (double) waitTime / total;
+        }
+
+        /**
+         * @return o tempo médio, em nanosegundos, de processamento de cada elemento
+         */
+        public double getAverageServiceTime() {
+            long total = processed + failed;
+            return total == 0 ? 0 : (double) serviceTime / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: threads %d/%d, depth %d, processed %d, failed %d, wait %.1f us, service %.1f us",
+                    name, activeThreads, threads, queueDepth, processed, failed,
+                    getAverageWaitTime() / 1000, getAverageServiceTime() / 1000);
+        }
+    }
+}
@@ -0,0 +1,488 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark das filas. Mede a memória ocupada por elemento (footprint) e o débito de produtores/consumidores para
+ * diferentes números de threads. A ConcurrentLinkedQueue do JDK é incluída como referência.
+ *
+ * O modo cardinality compara, com um só produtor e um só consumidor, a ConcurrentQueue com as variantes
+ * especializadas criadas pela ConcurrentQueues.
+ *
+ * O modo backoff compara a ConcurrentQueue sem backoff e com as estratégias Backoff.exponential e Backoff.adaptive,
+ * por omissão de 1 a 64 threads produtores/consumidores.
+ *
+ * O modo lanes mede a MultiLaneQueue com tantas lanes como pares de produtores/consumidores.
+ *
+ * O modo priority compara a ConcurrentPriorityQueue, nos modos estrito e relaxado, com a PriorityBlockingQueue do
+ * JDK, colocando os elementos com prioridades aleatórias.
+ *
+ * O modo recycling compara a ConcurrentQueue e a LockFreeDualQueue com as variantes que reciclam os nós, medindo com
+ * um produtor e um consumidor os bytes alocados por operação e o número de recolhas do Garbage Collector.
+ *
+ * O modo drain mede o tempo de retirar e processar todos os elementos de uma ConcurrentQueue com um ciclo de tryTake,
+ * com a drainingStream sequencial e com a drainingStream paralela, no ForkJoinPool comum.
+ *
+ * O modo stack compara a EliminationStack com a mesma pilha sem array de eliminação (Treiber) e com a
+ * ConcurrentLinkedDeque do JDK usada como pilha.
+ *
+ * Utilização: QueueBenchmark [footprint|throughput|batch|cardinality|backoff|lanes|priority|recycling|drain|stack|all] [threads separados por vírgulas] [operações por produtor]
+ */
+public class QueueBenchmark {
+    private static final int FOOTPRINT_ELEMENTS = 1000000;
+    private static final Object ELEMENT = new Object();
+
+    /**
+     * Adaptador comum às filas comparadas: put não bloqueante, tryTake que retorna null quando a fila está vazia e
+     * take que espera até existir um elemento
+     */
+    interface Target {
+        void put(Object value);
+
+        Object tryTake();
+
+        default Object take() {
+            Object value;
+            while ((value = tryTake()) == null)
+                Thread.yield();
+            return value;
+        }
+    }
+
+    static Map<String, Supplier<Target>> targets() {
+        Map<String, Supplier<Target>> targets = new LinkedHashMap<>();
+        targets.put("ConcurrentQueue", () -> {
+            ConcurrentQueue<Object> queue = new ConcurrentQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.put(value); }
+                public Object tryTake() { return queue.tryTake(); }
+            };
+        });
+        targets.put("SegmentedConcurrentQueue", () -> {
+            SegmentedConcurrentQueue<Object> queue = new SegmentedConcurrentQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.put(value); }
+                public Object tryTake() { return queue.tryTake(); }
+            };
+        });
+        targets.put("FlatCombiningQueue", () -> {
+            FlatCombiningQueue<Object> queue = new FlatCombiningQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.put(value); }
+                public Object tryTake() { return queue.tryTake(); }
+            };
+        });
+        targets.put("LockFreeDualQueue", () -> {
+            LockFreeDualQueue<Object> queue = new LockFreeDualQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.enqueue(value); }
+                public Object tryTake() { return queue.isEmpty() ? null : take(); }
+                public Object take() {
+                    try {
+                        return queue.dequeue();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+            };
+        });
+        targets.put("BoundedConcurrentQueue", () -> {
+            BoundedConcurrentQueue<Object> queue = new BoundedConcurrentQueue<>(FOOTPRINT_ELEMENTS);
+            return new Target() {
+                public void put(Object value) { queue.put(value); }
+                public Object tryTake() { return queue.tryTake(); }
+            };
+        });
+        targets.put("ConcurrentLinkedQueue", () -> {
+            ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.add(value); }
+                public Object tryTake() { return queue.poll(); }
+            };
+        });
+        return targets;
+    }
+
+    static Map<String, Supplier<Target>> cardinalityTargets() {
+        Map<String, Supplier<Target>> targets = new LinkedHashMap<>();
+        ConcurrentQueues.Cardinality single = ConcurrentQueues.Cardinality.SINGLE, multi = ConcurrentQueues.Cardinality.MULTI;
+        targets.put("ConcurrentQueue", () -> adapt(ConcurrentQueues.create(multi, multi)));
+        targets.put("MpscQueue", () -> adapt(ConcurrentQueues.create(multi, single)));
+        targets.put("SpmcQueue", () -> adapt(ConcurrentQueues.create(single, multi)));
+        targets.put("SpscQueue", () -> adapt(ConcurrentQueues.create(single, single)));
+        return targets;
+    }
+
+    static Map<String, Supplier<Target>> backoffTargets() {
+        Map<String, Supplier<Target>> targets = new LinkedHashMap<>();
+        targets.put("no backoff", () -> adapt(new ConcurrentQueue<>(WaitStrategy.yielding(), Backoff.none())));
+        targets.put("exponential backoff", () -> adapt(new ConcurrentQueue<>(WaitStrategy.yielding(), Backoff.exponential(4, 1024))));
+        targets.put("adaptive backoff", () -> adapt(new ConcurrentQueue<>(WaitStrategy.yielding(), Backoff.adaptive(4, 1024))));
+        return targets;
+    }
+
+    static Map<String, Supplier<Target>> priorityTargets() {
+        Map<String, Supplier<Target>> targets = new LinkedHashMap<>();
+        targets.put("PriorityBlockingQueue", () -> {
+            PriorityBlockingQueue<Prioritized> queue = new PriorityBlockingQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.put(new Prioritized(ThreadLocalRandom.current().nextLong(), value)); }
+                public Object tryTake() {
+                    Prioritized prioritized = queue.poll();
+                    return prioritized == null ? null : prioritized.value;
+                }
+            };
+        });
+        targets.put("ConcurrentPriorityQueue", () -> adapt(new ConcurrentPriorityQueue<>(WaitStrategy.yielding(), false)));
+        targets.put("relaxed ConcurrentPriorityQueue", () -> adapt(new ConcurrentPriorityQueue<>(WaitStrategy.yielding(), true)));
+        return targets;
+    }
+
+    static Map<String, Supplier<Target>> stackTargets() {
+        Map<String, Supplier<Target>> targets = new LinkedHashMap<>();
+        targets.put("ConcurrentLinkedDeque", () -> {
+            ConcurrentLinkedDeque<Object> deque = new ConcurrentLinkedDeque<>();
+            return new Target() {
+                public void put(Object value) { deque.push(value); }
+                public Object tryTake() { return deque.pollFirst(); }
+            };
+        });
+        targets.put("Treiber stack", () -> adapt(new EliminationStack<>(0, WaitStrategy.yielding())));
+        targets.put("EliminationStack", () -> adapt(new EliminationStack<>()));
+        return targets;
+    }
+
+    static Map<String, Supplier<Target>> recyclingTargets() {
+        Map<String, Supplier<Target>> targets = new LinkedHashMap<>();
+        targets.put("ConcurrentQueue", () -> adapt(new ConcurrentQueue<>()));
+        targets.put("RecyclingConcurrentQueue", () -> adapt(new RecyclingConcurrentQueue<>()));
+        targets.put("LockFreeDualQueue", () -> {
+            LockFreeDualQueue<Object> queue = new LockFreeDualQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.enqueue(value); }
+                public Object tryTake() { throw new UnsupportedOperationException(); }
+                public Object take() { return uninterruptibly(queue::dequeue); }
+            };
+        });
+        targets.put("RecyclingLockFreeDualQueue", () -> {
+            RecyclingLockFreeDualQueue<Object> queue = new RecyclingLockFreeDualQueue<>();
+            return new Target() {
+                public void put(Object value) { queue.enqueue(value); }
+                public Object tryTake() { throw new UnsupportedOperationException(); }
+                public Object take() { return uninterruptibly(queue::dequeue); }
+            };
+        });
+        return targets;
+    }
+
+    interface InterruptibleTake {
+        Object take() throws InterruptedException;
+    }
+
+    private static Object uninterruptibly(InterruptibleTake take) {
+        try {
+            return take.take();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Prioritized implements Comparable<Prioritized> {
+        final long priority;
+        final Object value;
+
+        Prioritized(long priority, Object value) {
+            this.priority = priority;
+            this.value = value;
+        }
+
+        public int compareTo(Prioritized other) {
+            return Long.compare(priority, other.priority);
+        }
+    }
+
+    private static Target adapt(ConcurrentPriorityQueue<Object> queue) {
+        return new Target() {
+            public void put(Object value) { queue.put(ThreadLocalRandom.current().nextLong(), value); }
+            public Object tryTake() { return queue.tryTakeMin(); }
+        };
+    }
+
+    private static Target adapt(SimpleQueue<Object> queue) {
+        return new Target() {
+            public void put(Object value) { queue.put(value); }
+            public Object tryTake() { return queue.tryTake(); }
+        };
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String mode = args.length > 0 ? args[0] : "all";
+        String[] threads = (args.length > 1 ? args[1] : "1,2,4,8").split(",");
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 500000;
+
+        if (mode.equals("footprint") || mode.equals("all")) {
+            for (Map.Entry<String, Supplier<Target>> target : targets().entrySet())
+                System.out.printf("--> %-24s %6.1f bytes/element%n", target.getKey(), footprint(target.getValue()));
+        }
+        if (mode.equals("throughput") || mode.equals("all")) {
+            for (Map.Entry<String, Supplier<Target>> target : targets().entrySet()) {
+                for (String t : threads) {
+                    int n = Integer.parseInt(t.trim());
+                    throughput(target.getValue(), n, operations / n);    // aquecimento
+                    double opsPerSecond = throughput(target.getValue(), n, operations / n);
+                    System.out.printf("--> %-24s producers/consumers: %2d %12.0f ops/s%n", target.getKey(), n, opsPerSecond);
+                }
+            }
+        }
+        if (mode.equals("cardinality") || mode.equals("all")) {
+            for (Map.Entry<String, Supplier<Target>> target : cardinalityTargets().entrySet()) {
+                throughput(target.getValue(), 1, operations);    // aquecimento
+                double opsPerSecond = throughput(target.getValue(), 1, operations);
+                System.out.printf("--> %-24s 1 producer/1 consumer %12.0f ops/s%n", target.getKey(), opsPerSecond);
+            }
+        }
+        if (mode.equals("backoff") || mode.equals("all")) {
+            String[] backoffThreads = (args.length > 1 ? args[1] : "1,2,4,8,16,32,64").split(",");
+            for (Map.Entry<String, Supplier<Target>> target : backoffTargets().entrySet()) {
+                for (String t : backoffThreads) {
+                    int n = Integer.parseInt(t.trim());
+                    throughput(target.getValue(), n, operations / n);    // aquecimento
+                    double opsPerSecond = throughput(target.getValue(), n, operations / n);
+                    System.out.printf("--> %-24s producers/consumers: %2d %12.0f ops/s%n", target.getKey(), n, opsPerSecond);
+                }
+            }
+        }
+        if (mode.equals("lanes") || mode.equals("all")) {
+            for (String t : threads) {
+                int n = Integer.parseInt(t.trim());
+                Supplier<Target> lanes = () -> adapt(new MultiLaneQueue<>(n));
+                throughput(lanes, n, operations / n);    // aquecimento
+                double opsPerSecond = throughput(lanes, n, operations / n);
+                System.out.printf("--> MultiLaneQueue lanes/producers/consumers: %2d %12.0f ops/s%n", n, opsPerSecond);
+            }
+        }
+        if (mode.equals("priority") || mode.equals("all")) {
+            for (Map.Entry<String, Supplier<Target>> target : priorityTargets().entrySet()) {
+                for (String t : threads) {
+                    int n = Integer.parseInt(t.trim());
+                    throughput(target.getValue(), n, operations / n);    // aquecimento
+                    double opsPerSecond = throughput(target.getValue(), n, operations / n);
+                    System.out.printf("--> %-32s producers/consumers: %2d %12.0f ops/s%n", target.getKey(), n, opsPerSecond);
+                }
+            }
+        }
+        if (mode.equals("recycling") || mode.equals("all")) {
+            for (Map.Entry<String, Supplier<Target>> target : recyclingTargets().entrySet()) {
+                allocation(target.getValue(), operations);    // aquecimento
+                double[] result = allocation(target.getValue(), operations);
+                System.out.printf("--> %-28s %8.1f bytes/operation %4.0f collections %12.0f ops/s%n", target.getKey(),
+                        result[0], result[1], result[2]);
+            }
+        }
+        if (mode.equals("stack") || mode.equals("all")) {
+            for (Map.Entry<String, Supplier<Target>> target : stackTargets().entrySet()) {
+                for (String t : threads) {
+                    int n = Integer.parseInt(t.trim());
+                    throughput(target.getValue(), n, operations / n);    // aquecimento
+                    double opsPerSecond = throughput(target.getValue(), n, operations / n);
+                    System.out.printf("--> %-24s producers/consumers: %2d %12.0f ops/s%n", target.getKey(), n, opsPerSecond);
+                }
+            }
+        }
+        if (mode.equals("drain") || mode.equals("all")) {
+            String[] ways = {"tryTake loop", "drainingStream", "parallel drainingStream"};
+            for (int way = 0; way < ways.length; way++) {
+                drain(way, operations);    // aquecimento
+                System.out.printf("--> %-24s %8.1f ms for %d elements%n", ways[way], drain(way, operations), operations);
+            }
+        }
+        if (mode.equals("batch") || mode.equals("all")) {
+            for (int batch : new int[]{1, 16, 256}) {
+                batch(batch, operations);    // aquecimento
+                System.out.printf("--> ConcurrentQueue putAll/drainTo batch: %3d %8.1f ns/element%n", batch, batch(batch, operations));
+                dualBatch(batch, operations);    // aquecimento
+                System.out.printf("--> LockFreeDualQueue drainTo batch:      %3d %8.1f ns/element%n", batch, dualBatch(batch, operations));
+            }
+        }
+    }
+
+    /**
+     * Mede a diferença de memória usada antes e depois de colocar FOOTPRINT_ELEMENTS referências para o mesmo objecto
+     * na fila, pelo que o resultado é apenas o custo da estrutura da fila por elemento
+     */
+    static double footprint(Supplier<Target> factory) {
+        Target queue = factory.get();
+        long before = usedMemory();
+        for (int i = 0; i < FOOTPRINT_ELEMENTS; i++)
+            queue.put(ELEMENT);
+        long after = usedMemory();
+        if (queue.tryTake() != ELEMENT)    // mantém a fila viva até depois da medição
+            throw new IllegalStateException();
+        return (double) (after - before) / FOOTPRINT_ELEMENTS;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Arranca threads produtores e threads consumidores, cada produtor coloca perProducer elementos e cada
+     * consumidor retira perProducer elementos
+     * @return o número de operações (put mais take) por segundo
+     */
+    static double throughput(Supplier<Target> factory, int threads, int perProducer) throws InterruptedException {
+        Target queue = factory.get();
+        long total = (long) threads * perProducer;
+        List<Thread> all = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            all.add(new Thread(() -> {
+                for (int j = 0; j < perProducer; j++)
+                    queue.put(ELEMENT);
+            }));
+            all.add(new Thread(() -> {
+                for (int j = 0; j < perProducer; j++)
+                    queue.take();
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join();
+        return total * 2 * 1e9 / (System.nanoTime() - start);
+    }
+
+    /**
+     * Um produtor coloca operations elementos e um consumidor retira-os, medindo cada um os bytes que alocou
+     * (getThreadAllocatedBytes) e contando as recolhas de todos os Garbage Collectors durante a execução
+     * @return os bytes alocados por operação (put ou take), o número de recolhas e o número de operações por segundo
+     */
+    static double[] allocation(Supplier<Target> factory, int operations) throws InterruptedException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Target queue = factory.get();
+        long[] allocated = new long[2];
+        Thread producer = new Thread(() -> {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < operations; i++)
+                queue.put(ELEMENT);
+            allocated[0] = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        });
+        Thread consumer = new Thread(() -> {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < operations; i++)
+                queue.take();
+            allocated[1] = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        });
+
+        long collections = collections(), start = System.nanoTime();
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+        long elapsed = System.nanoTime() - start;
+        return new double[]{(double) (allocated[0] + allocated[1]) / (2L * operations), collections() - collections,
+                2L * operations * 1e9 / elapsed};
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, collector.getCollectionCount());
+        return count;
+    }
+
+    /**
+     * Enche uma ConcurrentQueue com elements elementos e mede o tempo de os retirar, aplicando a cada um uma função
+     * com algum custo de CPU
+     * @param way 0 para um ciclo de tryTake, 1 para a drainingStream sequencial e 2 para a paralela
+     * @return o tempo em milissegundos
+     */
+    static double drain(int way, int elements) {
+        ConcurrentQueue<Long> queue = new ConcurrentQueue<>();
+        for (long i = 0; i < elements; i++)
+            queue.put(i);
+        long start = System.nanoTime(), sum = 0;
+        if (way == 0) {
+            Long v;
+            while ((v = queue.tryTake()) != null)
+                sum += work(v);
+        } else {
+            sum = queue.drainingStream(way == 2).mapToLong(QueueBenchmark::work).sum();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6;
+        if (sum == 42)    // impede que o trabalho seja eliminado
+            System.out.println();
+        return elapsed;
+    }
+
+    private static long work(long v) {
+        for (int i = 0; i < 100; i++)
+            v = v * 6364136223846793005L + 1442695040888963407L;
+        return v;
+    }
+
+    /**
+     * Mede, numa só thread, o custo por elemento de passar operations elementos pela ConcurrentQueue em lotes de
+     * tamanho batch com putAll e drainTo (batch igual a 1 usa put e tryTake)
+     * @return o tempo médio por elemento, em nanossegundos
+     */
+    static double batch(int batch, int operations) {
+        ConcurrentQueue<Object> queue = new ConcurrentQueue<>();
+        List<Object> elements = Collections.nCopies(batch, ELEMENT);
+        List<Object> drained = new ArrayList<>(batch);
+        int rounds = operations / batch;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            if (batch == 1) {
+                queue.put(ELEMENT);
+                queue.tryTake();
+            } else {
+                queue.putAll(elements);
+                queue.drainTo(drained, batch);
+                drained.clear();
+            }
+        }
+        return (double) (System.nanoTime() - start) / ((long) rounds * batch);
+    }
+
+    /**
+     * Igual ao anterior, sobre a LockFreeDualQueue: os elementos são colocados um a um com o enqueue e retirados em
+     * lotes com o drainTo (batch igual a 1 usa enqueue e tryDequeue)
+     * @return o tempo médio por elemento, em nanossegundos
+     */
+    static double dualBatch(int batch, int operations) {
+        LockFreeDualQueue<Object> queue = new LockFreeDualQueue<>();
+        List<Object> drained = new ArrayList<>(batch);
+        int rounds = operations / batch;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            if (batch == 1) {
+                queue.enqueue(ELEMENT);
+                queue.tryDequeue();
+            } else {
+                for (int j = 0; j < batch; j++)
+                    queue.enqueue(ELEMENT);
+                queue.drainTo(drained, batch);
+                drained.clear();
+            }
+        }
+        return (double) (System.nanoTime() - start) / ((long) rounds * batch);
+    }
+}
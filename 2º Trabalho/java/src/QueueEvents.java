@@ -0,0 +1,69 @@
+import jdk.jfr.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Eventos JFR (Java Flight Recorder) das filas lock-free. O evento de contenção só é gravado quando uma operação
+ * precisou de pelo menos MIN_RETRIES repetições do ciclo de CAS (propriedade queue.jfr.minRetries) e é amostrado,
+ * sendo gravado apenas um em cada SAMPLE_RATE (propriedade queue.jfr.sampleRate). Sem uma gravação activa o custo de
+ * cada operação é apenas o do contador de repetições.
+ */
+public final class QueueEvents {
+    static final int MIN_RETRIES = Math.max(1, Integer.getInteger("queue.jfr.minRetries", 1));
+    static final int SAMPLE_RATE = Math.max(1, Integer.getInteger("queue.jfr.sampleRate", 1));
+
+    private QueueEvents() {
+    }
+
+    /**
+     * Grava um evento de contenção caso a operação tenha precisado de repetir o ciclo de CAS vezes suficientes
+     * @param queue o nome da fila
+     * @param operation a operação (put, tryTake, enqueue, dequeue)
+     * @param retries o número de repetições do ciclo de CAS
+     * @param firstRetry o instante (System.nanoTime) da primeira repetição, lido apenas quando há contenção
+     */
+    static void contention(String queue, String operation, int retries, long firstRetry) {
+        if (retries < MIN_RETRIES)
+            return;
+        CasContention event = new CasContention();
+        if (!event.isEnabled() || !sample())
+            return;
+        event.queue = queue;
+        event.operation = operation;
+        event.retries = retries;
+        event.elapsed = System.nanoTime() - firstRetry;
+        event.commit();
+    }
+
+    static boolean sample() {
+        return SAMPLE_RATE == 1 || ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+    }
+
+    @Name("pc.queue.CasContention")
+    @Label("CAS Contention")
+    @Description("Operação de uma fila lock-free que teve de repetir o ciclo de CAS")
+    @Category({"Concurrent Programming", "Queues"})
+    @StackTrace(false)
+    static final class CasContention extends Event {
+        @Label("Queue")
+        String queue;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Retries")
+        int retries;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("pc.queue.RequestFulfilled")
+    @Label("Request Fulfilled")
+    @Description("Tempo entre a ligação de um nó REQUEST na LockFreeDualQueue e a chegada do dado")
+    @Category({"Concurrent Programming", "Queues"})
+    @Threshold("1 ms")
+    static final class RequestFulfilled extends Event {
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Flow.Publisher que entrega aos subscritores os elementos retirados de uma ConcurrentQueue ou de uma
+ * LockFreeDualQueue. Cada elemento é entregue a um único subscritor: os subscritores do mesmo publisher competem pelos
+ * elementos da fila, tal como os consumidores da própria fila.
+ *
+ * A entrega é feita por demanda. Cada subscrição tem o número de elementos pedidos (request) e um contador de trabalho
+ * pendente (wip): quem incrementa o wip de 0 para 1 submete ao Executor a tarefa de entrega, e as restantes
+ * notificações apenas incrementam o wip, fazendo a tarefa em curso dar mais uma volta. Em cada volta a tarefa retira
+ * da fila lotes de até batchSize elementos, com o drainTo de cada fila, enquanto houver pedidos e elementos. As
+ * subscrições só são acordadas pelo request e pelo listener de fila não vazia, chamado quando um produtor coloca
+ * elementos na fila vazia, pelo que não há espera activa. Depois do close os subscritores recebem onComplete assim que
+ * a fila fica vazia. Os elementos de um lote que não chegam a ser entregues, por a subscrição ter sido cancelada a meio
+ * do lote, são devolvidos à fila para os restantes subscritores, possivelmente fora da ordem original.
+ */
+public class QueuePublisher<T> implements Flow.Publisher<T> {
+    /**
+     * Retira até max elementos da fila para a colecção, sem esperar
+     */
+    private interface Source<T> {
+        int drainTo(Collection<? super T> target, int max);
+    }
+
+    private final Source<T> source;
+    private final Consumer<List<T>> putBack;
+    private final BooleanSupplier empty;
+    private final Executor executor;
+    private final int batchSize;
+    private final List<QueueSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    private QueuePublisher(Source<T> source, Consumer<List<T>> putBack, BooleanSupplier empty,
+                           Consumer<Runnable> listenerRegistration, Executor executor, int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize must be positive");
+        this.source = source;
+        this.putBack = putBack;
+        this.empty = empty;
+        this.executor = Objects.requireNonNull(executor);
+        this.batchSize = batchSize;
+        listenerRegistration.accept(this::nonEmpty);
+    }
+
+    /**
+     * Cria um publisher sobre a fila, que passa a ter como listener de fila não vazia o publisher
+     * @param queue
+     * @param executor o Executor onde são feitas as entregas
+     * @param batchSize o número máximo de elementos retirados da fila de cada vez
+     */
+    public static <T> QueuePublisher<T> of(ConcurrentQueue<T> queue, Executor executor, int batchSize) {
+        return new QueuePublisher<T>(queue::drainTo, queue::putAll, queue::isEmpty, queue::setNonEmptyListener,
+                executor, batchSize);
+    }
+
+    public static <T> QueuePublisher<T> of(ConcurrentQueue<T> queue, Executor executor) {
+        return of(queue, executor, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Igual ao anterior, sobre a LockFreeDualQueue. Os elementos são retirados com o drainTo, que nunca liga pedidos
+     * à fila, pelo que os consumidores que usem directamente o dequeue continuam a ter prioridade
+     */
+    public static <T> QueuePublisher<T> of(LockFreeDualQueue<T> queue, Executor executor, int batchSize) {
+        return new QueuePublisher<T>(queue::drainTo, elements -> elements.forEach(queue::enqueue), queue::isEmpty,
+                queue::setNonEmptyListener, executor, batchSize);
+    }
+
+    public static <T> QueuePublisher<T> of(LockFreeDualQueue<T> queue, Executor executor) {
+        return of(queue, executor, Flow.defaultBufferSize());
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        QueueSubscription subscription = new QueueSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        if (closed)
+            subscription.schedule();
+    }
+
+    /**
+     * Deixa de esperar novos elementos: cada subscritor recebe onComplete quando encontrar a fila vazia
+     */
+    public void close() {
+        closed = true;
+        for (QueueSubscription subscription : subscriptions)
+            subscription.schedule();
+    }
+
+    /**
+     * @return o número de subscrições activas
+     */
+    public int subscribers() {
+        return subscriptions.size();
+    }
+
+    private void nonEmpty() {
+        for (QueueSubscription subscription : subscriptions) {
+            if (subscription.requested.get() > 0)
+                subscription.schedule();
+        }
+    }
+
+    private final class QueueSubscription implements Flow.Subscription, Runnable {
+        final Flow.Subscriber<? super T> subscriber;
+        final AtomicLong requested = new AtomicLong();
+        final AtomicInteger wip = new AtomicInteger();
+        final List<T> batch = new ArrayList<>();    // só acedida pela tarefa de entrega
+        volatile boolean cancelled;
+        volatile Throwable error;    // entregue pela tarefa de entrega, para não concorrer com o onNext
+
+        QueueSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("request must be positive (rule 3.9)");
+                schedule();
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+                if (current == Long.MAX_VALUE)
+                    break;
+            } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0)
+                executor.execute(this);
+        }
+
+        /**
+         * Tarefa de entrega: enquanto existirem pedidos retira lotes da fila e entrega-os. Termina quando o wip volta a
+         * 0, ou seja, quando não houve nenhuma notificação durante a última volta. O onError de um request inválido
+         * também é entregue aqui, pelo que os sinais para o subscritor nunca são concorrentes (regra 1.3)
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                long demand = requested.get();
+                long emitted = 0;
+                while (!cancelled && error == null && emitted < demand) {
+                    int count = source.drainTo(batch, (int) Math.min(batchSize, demand - emitted));
+                    if (count == 0)
+                        break;
+                    int delivered = 0;
+                    while (delivered < count && !cancelled) {
+                        try {
+                            subscriber.onNext(batch.get(delivered++));
+                        } catch (Throwable e) {    // violação da regra 2.13, a subscrição é considerada cancelada
+                            cancel();
+                        }
+                    }
+                    // os elementos que já não vão ser entregues foram retirados da fila, pelo que são lá devolvidos
+                    if (delivered < count)
+                        putBack.accept(batch.subList(delivered, count));
+                    batch.clear();
+                    emitted += delivered;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE)
+                    requested.addAndGet(-emitted);
+                Throwable failure = error;
+                if (failure != null && !cancelled) {
+                    // tal como no onComplete, o wip fica acima de 0
+                    cancel();
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (closed && !cancelled && empty.getAsBoolean()) {
+                    // o wip fica acima de 0, pelo que a tarefa nunca mais é submetida
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
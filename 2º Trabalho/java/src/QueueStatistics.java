@@ -0,0 +1,62 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de contenção de uma fila lock-free, por tipo de operação: o número de repetições do ciclo de CAS
+ * (casFailures) e o número de vezes em que uma operação ajudou outra a terminar, por exemplo avançando um tail
+ * atrasado (helps). Só são criados quando a propriedade queue.statistics está activa, e mesmo nesse caso só são
+ * actualizados quando há contenção ou ajuda, pelo que uma operação sem contenção não lhes toca. Os contadores são
+ * LongAdder, que distribuem as actualizações concorrentes por várias células em vez de uma única linha de cache.
+ */
+public final class QueueStatistics {
+    private final ConcurrentHashMap<String, LongAdder> casFailures = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> helps = new ConcurrentHashMap<>();
+
+    /**
+     * A propriedade é lida na criação de cada fila, e não uma única vez, para que possa ser activada só para algumas
+     * @return uma nova instância caso a propriedade queue.statistics esteja activa, null caso contrário
+     */
+    static QueueStatistics create() {
+        return Boolean.getBoolean("queue.statistics") ? new QueueStatistics() : null;
+    }
+
+    void casFailures(String operation, int retries) {
+        counter(casFailures, operation).add(retries);
+    }
+
+    void help(String operation) {
+        counter(helps, operation).increment();
+    }
+
+    private static LongAdder counter(ConcurrentHashMap<String, LongAdder> counters, String operation) {
+        LongAdder counter = counters.get(operation);
+        return counter != null ? counter : counters.computeIfAbsent(operation, o -> new LongAdder());
+    }
+
+    /**
+     * @return o número de repetições do ciclo de CAS, por operação
+     */
+    public Map<String, Long> casFailures() {
+        return snapshot(casFailures);
+    }
+
+    /**
+     * @return o número de operações de ajuda, por operação
+     */
+    public Map<String, Long> helps() {
+        return snapshot(helps);
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentHashMap<String, LongAdder> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((operation, counter) -> snapshot.put(operation, counter.sum()));
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return "casFailures=" + casFailures() + ", helps=" + helps();
+    }
+}
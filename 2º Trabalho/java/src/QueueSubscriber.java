@@ -0,0 +1,150 @@
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Flow.Subscriber que coloca os elementos recebidos numa ConcurrentQueue, de onde são retirados pelos consumidores com
+ * tryTake e dequeue. A demanda segue o consumo: a subscrição começa por pedir capacity elementos e, sempre que os
+ * consumidores retiram metade desse número, pede outros tantos, pelo que entre elementos na fila e elementos pedidos
+ * e ainda não recebidos nunca há mais do que capacity. Um publisher mais rápido do que os consumidores fica assim
+ * limitado pela velocidade dos consumidores.
+ *
+ * Depois do onComplete ou do onError o dequeue retorna null assim que a fila fica vazia. Como a estratégia bloqueante
+ * acorda um consumidor por cada signal, cada consumidor que encontra o fim da subscrição acorda o seguinte.
+ */
+public class QueueSubscriber<T> implements Flow.Subscriber<T> {
+    private final ConcurrentQueue<T> queue;
+    private final WaitStrategy waitStrategy;
+    private final int capacity, refill;
+    private final AtomicInteger consumed = new AtomicInteger();
+    private final BooleanSupplier readyOrDone = () -> !isEmpty() || isDone();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    public QueueSubscriber(int capacity) {
+        this(capacity, WaitStrategy.yielding());
+    }
+
+    /**
+     * @param capacity o número máximo de elementos pedidos e ainda não retirados pelos consumidores
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar por elementos
+     */
+    public QueueSubscriber(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.refill = Math.max(1, capacity / 2);
+        this.waitStrategy = waitStrategy;
+        this.queue = new ConcurrentQueue<>(waitStrategy);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (this.subscription != null) {    // regra 2.5, só é aceite uma subscrição
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(capacity);
+    }
+
+    @Override
+    public void onNext(T item) {
+        queue.put(Objects.requireNonNull(item));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = Objects.requireNonNull(throwable);
+        done = true;
+        waitStrategy.signal();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        waitStrategy.signal();
+    }
+
+    /**
+     * Cancela a subscrição; os elementos já recebidos continuam disponíveis
+     */
+    public void cancel() {
+        Flow.Subscription current = subscription;
+        if (current != null)
+            current.cancel();
+        done = true;
+        waitStrategy.signal();
+    }
+
+    /**
+     * @return true caso a subscrição tenha terminado, por onComplete, onError ou cancel
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return o erro recebido pelo onError, ou null
+     */
+    public Throwable error() {
+        return error;
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public T tryTake() {
+        T v = queue.tryTake();
+        if (v != null)
+            taken();
+        return v;
+    }
+
+    /**
+     * Conta o elemento retirado e, quando a contagem chega a refill, volta a 0 no mesmo compareAndSet. Só o consumidor
+     * que faz essa transição pede o lote seguinte, pelo que cada lote é pedido uma única vez e nenhum se perde
+     */
+    private void taken() {
+        int observed, next;
+        do {
+            observed = consumed.get();
+            next = observed + 1 == refill ? 0 : observed + 1;
+        } while (!consumed.compareAndSet(observed, next));
+        if (next == 0 && !done)
+            subscription.request(refill);
+    }
+
+    /**
+     * @return o próximo elemento, ou null caso a subscrição tenha terminado e a fila esteja vazia
+     * @throws InterruptedException
+     */
+    public T dequeue() throws InterruptedException {
+        return dequeue(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o próximo elemento, ou null caso tenha ocorrido timeout ou a subscrição tenha terminado e a fila esteja
+     * vazia
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (done && queue.isEmpty()) {
+                waitStrategy.signal();    // acorda o consumidor seguinte, que também vai encontrar o fim
+                return tryTake();
+            }
+            if (!waitStrategy.await(readyOrDone, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Variante da ConcurrentQueue que recicla os nós em vez de alocar um por cada put. É o algoritmo de Michael e Scott na
+ * versão original do artigo, com counted pointers: os nós vêm de uma NodeArena, o head, o tail e o next de cada nó são
+ * referências com número de sequência e o antigo nó sentinela é devolvido à arena pelo consumidor que avança o head.
+ * O número de sequência é o que torna a reutilização segura: um compareAndSet sobre o head, o tail ou o next de um nó
+ * que entretanto foi libertado e reutilizado falha sempre, porque a referência já não é a mesma.
+ *
+ * Em regime estável a fila não aloca, o que elimina a pressão sobre o Garbage Collector a débitos elevados. O custo é
+ * que a memória ocupada pela arena nunca diminui, ficando do tamanho máximo que a fila atingiu.
+ */
+public class RecyclingConcurrentQueue<T> implements SimpleQueue<T> {
+    private final NodeArena arena = new NodeArena(false);
+    private final PaddedAtomicLong head, tail;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    public RecyclingConcurrentQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    /**
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar que a fila tenha elementos
+     */
+    public RecyclingConcurrentQueue(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        long dummy = NodeArena.successor(0, arena.allocate(), false);
+        head = new PaddedAtomicLong(dummy);
+        tail = new PaddedAtomicLong(dummy);
+    }
+
+    public void put(T elem) {
+        if (elem == null)
+            throw new NullPointerException();
+        int node = arena.allocate();
+        arena.value(node, elem);
+        int attempts = 0;
+        long firstRetry = 0;
+
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            long observedTail = tail.get();
+            int last = NodeArena.index(observedTail);
+            long next = arena.next(last);
+            if (observedTail == tail.get()) {    // tail e next são consistentes
+                if (NodeArena.index(next) != NodeArena.NIL) {
+                    tail.compareAndSet(observedTail, NodeArena.successor(observedTail, NodeArena.index(next), false));
+                } else if (arena.casNext(last, next, NodeArena.successor(next, node, false))) {
+                    tail.compareAndSet(observedTail, NodeArena.successor(observedTail, node, false));
+                    if (attempts > 1)
+                        QueueEvents.contention("RecyclingConcurrentQueue", "put", attempts - 1, firstRetry);
+                    waitStrategy.signal();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * O valor é lido antes do compareAndSet sobre o head, porque depois dele o nó passa a ser o sentinela e pode ser
+     * libertado e reutilizado por outro consumidor. Caso o compareAndSet falhe o valor lido é descartado. Ao contrário
+     * da ConcurrentQueue o valor não é apagado do novo sentinela, porque a partir do compareAndSet outro consumidor
+     * pode libertá-lo e um produtor reutilizá-lo; é apagado quando o nó é devolvido à arena
+     * @return o primeiro elemento da fila ou null caso esteja vazia
+     */
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            long observedHead = head.get();
+            long observedTail = tail.get();
+            int first = NodeArena.index(observedHead);
+            long next = arena.next(first);
+            if (observedHead != head.get())
+                continue;
+            int nextNode = NodeArena.index(next);
+            if (first == NodeArena.index(observedTail)) {
+                if (nextNode == NodeArena.NIL)
+                    return null;
+                tail.compareAndSet(observedTail, NodeArena.successor(observedTail, nextNode, false));    // tail atrasado
+            } else if (nextNode != NodeArena.NIL) {
+                Object value = arena.value(nextNode);
+                if (head.compareAndSet(observedHead, NodeArena.successor(observedHead, nextNode, false))) {
+                    arena.free(first);
+                    if (attempts > 1)
+                        QueueEvents.contention("RecyclingConcurrentQueue", "tryTake", attempts - 1, firstRetry);
+                    return (T) value;
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        while (true) {
+            long observedHead = head.get();
+            long next = arena.next(NodeArena.index(observedHead));
+            if (observedHead == head.get())
+                return NodeArena.index(next) == NodeArena.NIL;
+        }
+    }
+
+    /**
+     * @return o número de nós criados pela arena da fila, que deixa de crescer quando os nós passam a ser reciclados
+     */
+    public int allocatedNodes() {
+        return arena.allocated();
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
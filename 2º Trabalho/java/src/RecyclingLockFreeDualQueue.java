@@ -0,0 +1,313 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Variante da LockFreeDualQueue que recicla os nós, seguindo à letra o pseudocódigo de Scherer e Scott em
+ * LockFreeDualQueue_.java: os nós vêm de uma NodeArena, o head e o request de cada nó são counted pointers (cptr) e o
+ * tail e o next são counted tagged pointers (ctptr), em que o bit de pedido indica se o nó referido é um pedido. Tal
+ * como no pseudocódigo, o consumidor que recebe um dado pelo seu pedido liberta o nó de dados e o nó onde esperou, e o
+ * consumidor que retira um dado directamente liberta o antigo sentinela e, caso o tenha chegado a obter, o nó de
+ * pedido que não usou. Um pedido abandonado por timeout ou interrupção é cancelado colocando CANCELLED no request, e o
+ * nó onde o consumidor esperou é libertado por quem o retirar da fila.
+ *
+ * Tem o dequeue, o dequeue com timeout, o tryDequeue e o size da LockFreeDualQueue; não tem o drainTo, o listener de
+ * fila não vazia nem as estatísticas de contenção.
+ */
+public class RecyclingLockFreeDualQueue<T> {
+    // spins before parking; with a single processor the producer cannot run while the consumer spins
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+
+    private final NodeArena arena = new NodeArena(true);
+    private final PaddedAtomicLong head, tail;
+    // data nodes enqueued and taken, used by size
+    private final LongAdder enqueues = new LongAdder(), dequeues = new LongAdder();
+
+    public RecyclingLockFreeDualQueue() {
+        long sentinel = NodeArena.successor(0, arena.allocate(), false);
+        head = new PaddedAtomicLong(sentinel);
+        tail = new PaddedAtomicLong(sentinel);
+    }
+
+    /**
+     * Igual ao enqueue da LockFreeDualQueue: caso a fila tenha pedidos o dado é entregue ao primeiro, colocando o nó
+     * no request do sentinela e acordando o consumidor, caso contrário é ligado ao fim da fila
+     * @param v
+     */
+    public void enqueue(T v) {
+        int node = arena.allocate();
+        arena.value(node, v);
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            long observedTail = tail.get();
+            long observedHead = head.get();
+            int last = NodeArena.index(observedTail), first = NodeArena.index(observedHead);
+            if (last == first || !NodeArena.isRequest(observedTail)) {
+                // queue empty, tail falling behind, or queue contains data
+                long next = arena.next(last);
+                if (observedTail == tail.get()) {
+                    if (NodeArena.index(next) != NodeArena.NIL) {
+                        tail.compareAndSet(observedTail, NodeArena.successor(observedTail, NodeArena.index(next), NodeArena.isRequest(next)));
+                    } else if (arena.casNext(last, next, NodeArena.successor(next, node, false))) {
+                        tail.compareAndSet(observedTail, NodeArena.successor(observedTail, node, false));
+                        if (attempts > 1)
+                            QueueEvents.contention("RecyclingLockFreeDualQueue", "enqueue", attempts - 1, firstRetry);
+                        enqueues.increment();
+                        return;
+                    }
+                }
+            } else {    // queue consists of requests
+                long next = arena.next(first);
+                if (observedTail == tail.get()) {
+                    long request = arena.request(first);
+                    if (observedHead == head.get()) {    // head, next and request are consistent
+                        // the consumer waiting on this request keeps its thread in the value of its request node
+                        Object waiter = arena.value(NodeArena.index(next));
+                        if (NodeArena.index(request) == NodeArena.NIL
+                                && arena.casRequest(first, request, NodeArena.successor(request, node, false))) {
+                            head.compareAndSet(observedHead, NodeArena.successor(observedHead, NodeArena.index(next), false));
+                            LockSupport.unpark((Thread) waiter);
+                            if (attempts > 1)
+                                QueueEvents.contention("RecyclingLockFreeDualQueue", "enqueue", attempts - 1, firstRetry);
+                            enqueues.increment();
+                            return;
+                        }
+                        // try to remove fulfilled or cancelled request even if it's not mine
+                        advanceHead(observedHead, arena.request(first));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retira um dado caso exista, sem nunca ligar um pedido à fila
+     * @return o dado retirado ou null caso a fila não tenha dados
+     */
+    @SuppressWarnings("unchecked")
+    public T tryDequeue() {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            long observedHead = head.get();
+            long observedTail = tail.get();
+            int first = NodeArena.index(observedHead), last = NodeArena.index(observedTail);
+            if (last == first || NodeArena.isRequest(observedTail)) {
+                long next = arena.next(last);
+                if (observedTail == tail.get()) {
+                    if (NodeArena.index(next) == NodeArena.NIL || NodeArena.isRequest(observedTail))
+                        return null;    // fila vazia ou só com pedidos
+                    // tail falling behind
+                    tail.compareAndSet(observedTail, NodeArena.successor(observedTail, NodeArena.index(next), NodeArena.isRequest(next)));
+                }
+            } else {    // queue consists of real data
+                long next = arena.next(first);
+                if (observedTail == tail.get() && observedHead == head.get()) {
+                    int datum = NodeArena.index(next);
+                    Object result = arena.value(datum);
+                    if (head.compareAndSet(observedHead, NodeArena.successor(observedHead, datum, false))) {
+                        arena.free(first);
+                        if (attempts > 1)
+                            QueueEvents.contention("RecyclingLockFreeDualQueue", "tryDequeue", attempts - 1, firstRetry);
+                        dequeues.increment();
+                        return (T) result;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Igual ao dequeue da LockFreeDualQueue: o consumidor que não encontra dados liga um pedido à fila e é parado com
+     * LockSupport.park até o produtor que o satisfaz o acordar
+     * @return o dado retirado
+     * @throws InterruptedException caso a thread seja interrompida antes de o pedido ser satisfeito; o pedido é
+     * cancelado e nenhum dado é perdido
+     */
+    public T dequeue() throws InterruptedException {
+        return dequeue(false, 0);
+    }
+
+    /**
+     * Igual ao dequeue, mas desiste quando passa o timeout, cancelando o pedido
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o dado retirado ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        if (timeout <= 0)
+            return tryDequeue();    // não vale a pena ligar um pedido que seria logo cancelado
+        return dequeue(true, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T dequeue(boolean timed, long deadline) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        int request = NodeArena.NIL;
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            long observedHead = head.get();
+            long observedTail = tail.get();
+            int first = NodeArena.index(observedHead), last = NodeArena.index(observedTail);
+            if (last == first || NodeArena.isRequest(observedTail)) {
+                // queue empty, tail falling behind, or queue contains requests
+                long next = arena.next(last);
+                if (observedTail != tail.get())
+                    continue;
+                if (NodeArena.index(next) != NodeArena.NIL) {    // tail falling behind
+                    tail.compareAndSet(observedTail, NodeArena.successor(observedTail, NodeArena.index(next), NodeArena.isRequest(next)));
+                    continue;
+                }
+                if (request == NodeArena.NIL) {
+                    request = arena.allocate();
+                    // published by the casNext that links it; cleared only when the node is freed, since the
+                    // node may already be recycled when the consumer returns
+                    arena.value(request, Thread.currentThread());
+                }
+                if (!arena.casNext(last, next, NodeArena.successor(next, request, true)))
+                    continue;
+                // linked in request; now try to swing tail pointer
+                tail.compareAndSet(observedTail, NodeArena.successor(observedTail, request, true));
+                if (attempts > 1)
+                    QueueEvents.contention("RecyclingLockFreeDualQueue", "dequeue", attempts - 1, firstRetry);
+
+                // help someone else if I need to
+                long firstRequest = arena.request(first);
+                if (observedHead == head.get() && NodeArena.index(firstRequest) != NodeArena.NIL)
+                    advanceHead(observedHead, firstRequest);
+
+                return awaitFulfilment(last, request, timed, deadline);
+            } else {    // queue consists of real data
+                long next = arena.next(first);
+                if (observedTail == tail.get() && observedHead == head.get()) {
+                    // head and next are consistent; read result *before* swinging head
+                    int datum = NodeArena.index(next);
+                    Object result = arena.value(datum);
+                    if (head.compareAndSet(observedHead, NodeArena.successor(observedHead, datum, false))) {
+                        arena.free(first);
+                        if (request != NodeArena.NIL)
+                            arena.free(request);
+                        if (attempts > 1)
+                            QueueEvents.contention("RecyclingLockFreeDualQueue", "dequeue", attempts - 1, firstRetry);
+                        dequeues.increment();
+                        return (T) result;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Espera que o pedido request, ligado depois de last, seja satisfeito, como o awaitFulfilment da
+     * LockFreeDualQueue. No timeout e na interrupção o pedido é cancelado com um compareAndSet do request de last de
+     * NIL para CANCELLED; caso esse compareAndSet falhe um produtor satisfez entretanto o pedido e o dado é retornado,
+     * repondo a interrupção
+     * @return o dado recebido, ou null caso o pedido tenha sido cancelado por timeout
+     * @throws InterruptedException caso o pedido tenha sido cancelado por interrupção
+     */
+    @SuppressWarnings("unchecked")
+    private T awaitFulfilment(int last, int request, boolean timed, long deadline) throws InterruptedException {
+        boolean interrupted = false;
+        int spins = SPINS;
+        long fulfilled;
+        while (NodeArena.index(fulfilled = arena.request(last)) == NodeArena.NIL) {
+            if (spins > 0) {
+                spins--;
+                Thread.onSpinWait();
+                continue;
+            }
+            if (Thread.interrupted()) {
+                interrupted = true;
+                break;
+            }
+            if (timed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        if (NodeArena.index(fulfilled) == NodeArena.NIL) {
+            long cancelled = NodeArena.successor(fulfilled, NodeArena.CANCELLED, false);
+            if (arena.casRequest(last, fulfilled, cancelled)) {
+                // help snip my node; otherwise whoever removes it later frees it
+                long currentHead = head.get();
+                if (NodeArena.index(currentHead) == last)
+                    advanceHead(currentHead, cancelled);
+                if (interrupted)
+                    throw new InterruptedException();
+                return null;
+            }
+            fulfilled = arena.request(last);
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        // help snip my node
+        long currentHead = head.get();
+        if (NodeArena.index(currentHead) == last)
+            head.compareAndSet(currentHead, NodeArena.successor(currentHead, request, false));
+
+        // data is now available; read it out and go home
+        int datum = NodeArena.index(fulfilled);
+        T result = (T) arena.value(datum);
+        arena.free(datum);
+        arena.free(last);
+        dequeues.increment();
+        return result;
+    }
+
+    /**
+     * Retira da fila o sentinela observedHead, cujo pedido já foi satisfeito ou cancelado. O nó de um pedido
+     * satisfeito é libertado pelo consumidor que esperou nele; o de um pedido cancelado por quem o retira da fila
+     * @param request o request do sentinela, já diferente de NIL
+     */
+    private void advanceHead(long observedHead, long request) {
+        int first = NodeArena.index(observedHead);
+        long next = arena.next(first);
+        if (head.compareAndSet(observedHead, NodeArena.successor(observedHead, NodeArena.index(next), false))
+                && NodeArena.index(request) == NodeArena.CANCELLED)
+            arena.free(first);
+    }
+
+    /**
+     * @return o número de nós criados pela arena da fila, que deixa de crescer quando os nós passam a ser reciclados
+     */
+    public int allocatedNodes() {
+        return arena.allocated();
+    }
+
+    /**
+     * Número aproximado de dados na fila, calculado a partir dos contadores de enqueue e dequeue, como na
+     * LockFreeDualQueue
+     * @return
+     */
+    public int size() {
+        long size = enqueues.sum() - dequeues.sum();
+        return size <= 0 ? 0 : (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * A fila não tem dados quando o sentinela não tem sucessor ou o sucessor é um pedido
+     * @return
+     */
+    public boolean isEmpty() {
+        while (true) {
+            long observedHead = head.get();
+            long next = arena.next(NodeArena.index(observedHead));
+            if (observedHead == head.get())
+                return NodeArena.index(next) == NodeArena.NIL || NodeArena.isRequest(next);
+        }
+    }
+}
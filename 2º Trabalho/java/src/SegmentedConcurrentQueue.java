@@ -0,0 +1,183 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fila lock-free ilimitada formada por uma lista ligada de segmentos, cada um com um array de SEGMENT_SIZE posições,
+ * ao estilo da FAAArrayQueue (Ramalhete e Correia) e da LCRQ. Produtores e consumidores reservam posições com
+ * getAndIncrement sobre os índices do segmento em vez de repetirem um ciclo de compareAndSet, pelo que com contenção
+ * cada thread obtém uma posição diferente à primeira tentativa. O único compareAndSet por elemento é feito sobre a
+ * posição reservada, e só falha quando um consumidor chegou à posição antes do produtor e a marcou como TAKEN. Só
+ * há alocação e ligação de um novo segmento a cada SEGMENT_SIZE elementos.
+ */
+public class SegmentedConcurrentQueue<T> implements SimpleQueue<T> {
+    static final int SEGMENT_SIZE = 1024;
+
+    private static final Object TAKEN = new Object();
+    private static final VarHandle ITEM = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Segment.class, "next", Segment.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Os índices de inserção e de remoção são alterados por threads diferentes, pelo que são PaddedAtomicLong para
+     * ficarem em linhas de cache diferentes
+     */
+    private static class Segment {
+        final Object[] items;
+        final PaddedAtomicLong enqueueIndex;
+        final PaddedAtomicLong dequeueIndex = new PaddedAtomicLong(0);
+        volatile Segment next;
+
+        /**
+         * Cria um segmento já com o primeiro elemento, para que o produtor que o liga à fila não tenha de disputar a
+         * primeira posição com os outros produtores
+         */
+        Segment(int size, Object first) {
+            items = new Object[size];
+            items[0] = first;
+            enqueueIndex = new PaddedAtomicLong(first == null ? 0 : 1);
+        }
+    }
+
+    private final int segmentSize;
+    private final PaddedAtomicReference<Segment> head, tail;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    public SegmentedConcurrentQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    /**
+     * @param waitStrategy a estratégia usada pelos consumidores no dequeue para esperar que a fila tenha elementos
+     */
+    public SegmentedConcurrentQueue(WaitStrategy waitStrategy) {
+        this(SEGMENT_SIZE, waitStrategy);
+    }
+
+    SegmentedConcurrentQueue(int segmentSize, WaitStrategy waitStrategy) {
+        this.segmentSize = segmentSize;
+        this.waitStrategy = waitStrategy;
+        Segment first = new Segment(segmentSize, null);
+        head = new PaddedAtomicReference<>(first);
+        tail = new PaddedAtomicReference<>(first);
+    }
+
+    /**
+     * O produtor reserva uma posição do segmento da cauda com getAndIncrement e coloca lá o elemento com um
+     * compareAndSet, que só falha caso um consumidor já tenha desistido dessa posição. Caso o segmento esteja cheio
+     * liga um novo segmento, que já contém o elemento, ou ajuda a avançar o tail caso outro produtor o tenha feito.
+     * @param elem
+     */
+    public void put(T elem) {
+        if (elem == null)
+            throw new NullPointerException();
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Segment observedTail = tail.get();
+            long index = observedTail.enqueueIndex.getAndIncrement();
+            if (index < segmentSize) {
+                if (ITEM.compareAndSet(observedTail.items, (int) index, (Object) null, (Object) elem))
+                    break;
+                continue;    // um consumidor marcou a posição como TAKEN
+            }
+            if (observedTail != tail.get())
+                continue;
+            Segment observedNext = observedTail.next;
+            if (observedNext == null) {
+                Segment segment = new Segment(segmentSize, elem);
+                if (NEXT.compareAndSet(observedTail, (Segment) null, segment)) {
+                    tail.compareAndSet(observedTail, segment);
+                    break;
+                }
+            } else {
+                tail.compareAndSet(observedTail, observedNext);
+            }
+        }
+        if (attempts > 1)
+            QueueEvents.contention("SegmentedConcurrentQueue", "put", attempts - 1, firstRetry);
+        waitStrategy.signal();
+    }
+
+    /**
+     * O consumidor reserva uma posição do segmento da cabeça com getAndIncrement e retira o elemento com getAndSet,
+     * deixando a posição marcada como TAKEN. Caso o produtor dessa posição ainda não tenha lá colocado o elemento,
+     * a marca faz com que o produtor tente outra posição e o consumidor volta a tentar. Quando o segmento da cabeça
+     * está esgotado avança o head para o segmento seguinte, ficando o anterior disponível para o Garbage Collector.
+     * @return o elemento retirado ou null caso a fila esteja vazia
+     */
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Segment observedHead = head.get();
+            if (isExhausted(observedHead) && observedHead.next == null)
+                return null;
+            long index = observedHead.dequeueIndex.getAndIncrement();
+            if (index >= segmentSize) {
+                Segment observedNext = observedHead.next;
+                if (observedNext == null)
+                    return null;
+                head.compareAndSet(observedHead, observedNext);
+                continue;
+            }
+            Object item = ITEM.getAndSet(observedHead.items, (int) index, TAKEN);
+            if (item == null)
+                continue;
+            if (attempts > 1)
+                QueueEvents.contention("SegmentedConcurrentQueue", "tryTake", attempts - 1, firstRetry);
+            return (T) item;
+        }
+    }
+
+    private boolean isExhausted(Segment segment) {
+        return segment.dequeueIndex.get() >= Math.min(segment.enqueueIndex.get(), segmentSize);
+    }
+
+    /**
+     * indica se a fila está vazia, o que acontece quando todas as posições reservadas do segmento da cabeça já foram
+     * consumidas e não existe segmento seguinte
+     * @return
+     */
+    public boolean isEmpty() {
+        Segment observedHead = head.get();
+        return isExhausted(observedHead) && observedHead.next == null;
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Buffer circular para um único produtor e um único consumidor num ficheiro mapeado em memória, para passar mensagens
+ * entre dois processos (ou duas threads) da mesma máquina sem sockets. O ficheiro tem um cabeçalho com a capacidade,
+ * o tail (bytes escritos pelo produtor) e o head (bytes lidos pelo consumidor), cada um na sua linha de cache, seguido
+ * dos dados. O produtor escreve a mensagem ([int tamanho][conteúdo], alinhada a 4 bytes) e só depois avança o tail com
+ * uma escrita release; o consumidor lê o tail com uma leitura acquire, lê a mensagem e avança o head com uma escrita
+ * release, que é o que liberta o espaço para o produtor. Cada lado guarda em cache o último valor lido do contador do
+ * outro lado e só o volta a ler quando o valor em cache não chega. Quando uma mensagem não cabe no fim do buffer, o
+ * produtor escreve PADDING e continua no início. Por isso cada mensagem, com o tamanho, ocupa no máximo metade da
+ * capacidade: uma maior podia precisar, contando com o PADDING, de mais espaço que a capacidade, e nunca seria colocada.
+ *
+ * Como o produtor de outro processo não pode acordar o consumidor, o ring nunca chama o signal e a estratégia de
+ * espera tem de ser uma das que não dependem dele: busySpin, yielding ou sleeping. As estratégias que param a thread
+ * (blocking e spinThenPark) são rejeitadas pelo construtor, porque ficariam paradas para sempre.
+ *
+ * Utilização: SharedMemoryRing producer|consumer ficheiro [mensagens]
+ */
+public class SharedMemoryRing implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int CAPACITY = 0, TAIL = 64, HEAD = 128, DATA = 192;
+    private static final int PADDING = -1;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer buffer;
+    private final int capacity, mask;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+    private final BooleanSupplier notFull;
+    // valores do outro lado em cache, cada um só é usado por um dos lados
+    private long headCache, tailCache;
+
+    /**
+     * Abre o buffer circular no ficheiro, criando-o caso não exista. O primeiro processo a abrir o ficheiro escreve a
+     * capacidade com um compareAndSet; os seguintes verificam que usam a mesma
+     * @param file o ficheiro partilhado pelos dois processos
+     * @param capacity a capacidade em bytes, potência de 2
+     * @param waitStrategy a estratégia usada nas esperas do produtor e do consumidor, que não pode depender do signal
+     */
+    public SharedMemoryRing(Path file, int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 16 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of 2, at least 16");
+        if (waitStrategy instanceof WaitStrategy.Blocking)    // inclui a SpinThenPark
+            throw new IllegalArgumentException("the ring never signals, use a wait strategy that does not park");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA + capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        int existing = (int) INT.compareAndExchange(buffer, CAPACITY, 0, capacity);
+        if (existing != 0 && existing != capacity)
+            throw new IllegalStateException("ring was created with capacity " + existing);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.headCache = head();
+        this.tailCache = tail();
+        int minimum = recordSize(0);
+        notFull = () -> capacity - (tail() - head()) >= minimum;
+    }
+
+    private static int recordSize(int length) {
+        return (4 + length + 3) & ~3;
+    }
+
+    private long tail() {
+        return (long) LONG.getAcquire(buffer, TAIL);
+    }
+
+    private long head() {
+        return (long) LONG.getAcquire(buffer, HEAD);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return o tamanho máximo de uma mensagem, em bytes
+     */
+    public int maxMessageSize() {
+        return capacity / 2 - 4;
+    }
+
+    /**
+     * Tenta colocar a mensagem sem esperar. Só pode ser chamado pelo produtor
+     * @return true caso a mensagem tenha sido colocada, false caso não exista espaço
+     * @throws IllegalArgumentException caso a mensagem seja maior que maxMessageSize
+     */
+    public boolean offer(ByteBuffer message) {
+        int length = message.remaining();
+        int size = recordSize(length);
+        if (size > capacity / 2)
+            throw new IllegalArgumentException("message larger than half the ring");
+        long tail = (long) LONG.getOpaque(buffer, TAIL);
+        int index = (int) tail & mask;
+        int toEnd = capacity - index;
+        int needed = size <= toEnd ? size : toEnd + size;
+        if (needed > capacity - (tail - headCache)) {
+            headCache = head();
+            if (needed > capacity - (tail - headCache))
+                return false;
+        }
+        if (size > toEnd) {
+            INT.set(buffer, DATA + index, PADDING);
+            tail += toEnd;
+            index = 0;
+        }
+        INT.set(buffer, DATA + index, length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(DATA + index + 4);
+        target.put(message.duplicate());
+        LONG.setRelease(buffer, TAIL, tail + size);
+        return true;
+    }
+
+    public boolean offer(byte[] message) {
+        return offer(ByteBuffer.wrap(message));
+    }
+
+    /**
+     * Coloca a mensagem, esperando por espaço segundo a estratégia de espera. Só pode ser chamado pelo produtor
+     * @throws InterruptedException
+     */
+    public void put(ByteBuffer message) throws InterruptedException {
+        while (!offer(message))
+            waitStrategy.await(notFull, Long.MAX_VALUE);
+    }
+
+    public void put(byte[] message) throws InterruptedException {
+        put(ByteBuffer.wrap(message));
+    }
+
+    /**
+     * Entrega a próxima mensagem ao handler sem a copiar, como um ByteBuffer só de leitura sobre o ficheiro mapeado,
+     * válido apenas durante a chamada: o espaço só é libertado para o produtor depois de o handler retornar. Só pode
+     * ser chamado pelo consumidor
+     * @return true caso tenha sido lida uma mensagem, false caso o buffer esteja vazio
+     */
+    public boolean tryTake(Consumer<ByteBuffer> handler) {
+        long head = (long) LONG.getOpaque(buffer, HEAD);
+        while (true) {
+            if (head == tailCache) {
+                tailCache = tail();
+                if (head == tailCache)
+                    return false;
+            }
+            int index = (int) head & mask;
+            int length = (int) INT.get(buffer, DATA + index);
+            if (length == PADDING) {
+                head += capacity - index;
+                LONG.setRelease(buffer, HEAD, head);
+                continue;
+            }
+            ByteBuffer message = buffer.duplicate();
+            message.position(DATA + index + 4).limit(DATA + index + 4 + length);
+            handler.accept(message.slice().asReadOnlyBuffer());
+            LONG.setRelease(buffer, HEAD, head + recordSize(length));
+            return true;
+        }
+    }
+
+    /**
+     * Igual ao tryTake com handler, mas copia a mensagem
+     * @return a mensagem ou null caso o buffer esteja vazio
+     */
+    public byte[] tryTake() {
+        byte[][] result = new byte[1][];
+        if (!tryTake(message -> {
+            result[0] = new byte[message.remaining()];
+            message.get(result[0]);
+        }))
+            return null;
+        return result[0];
+    }
+
+    public boolean isEmpty() {
+        return head() == tail();
+    }
+
+    public byte[] dequeue() throws InterruptedException {
+        byte[] message;
+        while ((message = tryTake()) == null)
+            waitStrategy.await(notEmpty, Long.MAX_VALUE);
+        return message;
+    }
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return a mensagem ou null caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public byte[] dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        byte[] message;
+        while ((message = tryTake()) == null) {
+            if (!waitStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return message;
+    }
+
+    /**
+     * O mapeamento só é libertado pelo Garbage Collector; close apenas força a escrita para o ficheiro
+     */
+    public void close() {
+        buffer.force();
+    }
+
+    /**
+     * Mede a latência de passagem entre dois processos: o produtor coloca em cada mensagem o instante em que a envia
+     * (System.nanoTime, que no Linux é comum a todos os processos da máquina) e o consumidor calcula a diferença para
+     * o instante em que a recebe. O produtor espera que o buffer esteja vazio antes de cada envio, para se medir a
+     * latência e não o tempo passado na fila
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: SharedMemoryRing producer|consumer <file> [messages]");
+            return;
+        }
+        Path file = Paths.get(args[1]);
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        try (SharedMemoryRing ring = new SharedMemoryRing(file, DEFAULT_CAPACITY, WaitStrategy.busySpin())) {
+            if (args[0].equals("producer")) {
+                ByteBuffer message = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+                for (int i = 0; i < messages; i++) {
+                    while (!ring.isEmpty())
+                        Thread.onSpinWait();
+                    message.putLong(0, System.nanoTime());
+                    ring.put(message);
+                }
+            } else {
+                long[] latencies = new long[messages];
+                long[] received = new long[1];
+                for (int i = 0; i < messages; i++) {
+                    while (!ring.tryTake(message -> received[0] = System.nanoTime() - message.order(ByteOrder.nativeOrder()).getLong(0)))
+                        Thread.onSpinWait();
+                    latencies[i] = received[0];
+                }
+                Arrays.sort(latencies);
+                System.out.printf("--> messages: %d p50: %d ns p99: %d ns p99.9: %d ns%n", messages,
+                        latencies[messages / 2], latencies[(int) (messages * 0.99)], latencies[(int) (messages * 0.999)]);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Operações comuns às filas concorrentes do projecto. put nunca falha (nas filas limitadas espera por espaço),
+ * tryTake não bloqueia e retorna null quando a fila está vazia e dequeue espera até existir um elemento.
+ */
+public interface SimpleQueue<T> {
+    void put(T elem);
+
+    T tryTake();
+
+    boolean isEmpty();
+
+    T dequeue() throws InterruptedException;
+
+    /**
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return o elemento removido ou null caso tenha ocorrido timeout
+     */
+    T dequeue(long timeout) throws InterruptedException;
+}
@@ -0,0 +1,55 @@
+/**
+ * Fila ilimitada para um único produtor e vários consumidores. O produtor é o único a alterar o tail, que nunca fica
+ * atrasado, pelo que liga o novo nó com uma escrita release e sem o ciclo de compareAndSet do put da
+ * ConcurrentQueue. Os consumidores disputam o head com compareAndSet, como no tryTake da ConcurrentQueue.
+ */
+public class SpmcQueue<T> extends AbstractLinkedQueue<T> {
+    private final PaddedAtomicReference<Node<T>> head, tail;
+
+    public SpmcQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    public SpmcQueue(WaitStrategy waitStrategy) {
+        super(waitStrategy);
+        Node<T> dummy = new Node<>(null);
+        head = new PaddedAtomicReference<>(dummy);
+        tail = new PaddedAtomicReference<>(dummy);
+    }
+
+    /**
+     * Só pode ser chamado pelo produtor
+     * @param elem
+     */
+    public void put(T elem) {
+        Node<T> node = new Node<>(elem);
+        NEXT.setRelease(tail.getPlain(), node);
+        tail.setPlain(node);
+        signal();
+    }
+
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            Node<T> observedHead = head.get();
+            Node<T> node = (Node<T>) NEXT.getAcquire(observedHead);
+            if (node == null)
+                return null;
+            if (head.compareAndSet(observedHead, node)) {
+                T value = node.value;
+                node.value = null;
+                if (attempts > 1)
+                    QueueEvents.contention("SpmcQueue", "tryTake", attempts - 1, firstRetry);
+                return value;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return NEXT.getAcquire(head.get()) == null;
+    }
+}
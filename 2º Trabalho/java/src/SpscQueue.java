@@ -0,0 +1,53 @@
+/**
+ * Fila ilimitada para um único produtor e um único consumidor. Como cada extremidade só é alterada por uma thread
+ * não há nenhum compareAndSet: o produtor liga o novo nó com uma escrita release (lazySet) sobre o next do último nó
+ * e o consumidor lê-o com uma leitura acquire, o que basta para que o consumidor veja o valor escrito antes da
+ * ligação. O head e o tail continuam em PaddedAtomicReference para não partilharem a linha de cache, mas são
+ * escritos com lazySet em vez de escritas volatile.
+ */
+public class SpscQueue<T> extends AbstractLinkedQueue<T> {
+    private final PaddedAtomicReference<Node<T>> head, tail;
+
+    public SpscQueue() {
+        this(WaitStrategy.yielding());
+    }
+
+    public SpscQueue(WaitStrategy waitStrategy) {
+        super(waitStrategy);
+        Node<T> dummy = new Node<>(null);
+        head = new PaddedAtomicReference<>(dummy);
+        tail = new PaddedAtomicReference<>(dummy);
+    }
+
+    /**
+     * Só pode ser chamado pelo produtor
+     * @param elem
+     */
+    public void put(T elem) {
+        Node<T> node = new Node<>(elem);
+        Node<T> last = tail.getPlain();
+        NEXT.setRelease(last, node);
+        tail.setPlain(node);
+        signal();
+    }
+
+    /**
+     * Só pode ser chamado pelo consumidor
+     * @return o elemento retirado ou null caso a fila esteja vazia
+     */
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        Node<T> first = head.getPlain();
+        Node<T> node = (Node<T>) NEXT.getAcquire(first);
+        if (node == null)
+            return null;
+        T value = node.value;
+        node.value = null;
+        head.lazySet(node);
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return NEXT.getAcquire(head.get()) == null;
+    }
+}
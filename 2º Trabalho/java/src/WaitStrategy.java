@@ -0,0 +1,224 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Estratégia usada por um consumidor para esperar que uma fila deixe de estar vazia, à semelhança das WaitStrategy
+ * do Disruptor. Os produtores chamam signal depois de cada inserção; nas estratégias que não bloqueiam a thread essa
+ * chamada não faz nada, e na estratégia bloqueante só adquire o lock quando existe algum consumidor parado.
+ */
+public interface WaitStrategy {
+    /**
+     * Espera até que ready seja verdadeiro ou até ser atingido o deadline
+     * @param ready a condição de que o consumidor está à espera
+     * @param deadline o instante limite (System.nanoTime), ou Long.MAX_VALUE para esperar sem limite
+     * @return true caso a condição se verifique, false caso tenha sido atingido o deadline
+     * @throws InterruptedException
+     */
+    boolean await(BooleanSupplier ready, long deadline) throws InterruptedException;
+
+    /**
+     * Avisa os consumidores à espera que a condição pode ter passado a ser verdadeira
+     */
+    void signal();
+
+    /**
+     * @return uma estratégia que fica em spin activo, com a menor latência e o maior consumo de CPU
+     */
+    static WaitStrategy busySpin() {
+        return new BusySpin();
+    }
+
+    /**
+     * @return uma estratégia que faz spin durante algumas iterações e depois cede o processador (Thread.yield)
+     */
+    static WaitStrategy yielding() {
+        return new Yielding();
+    }
+
+    /**
+     * @param spins o número de iterações de spin antes de parar a thread
+     * @return uma estratégia que faz spin durante algumas iterações e depois pára a thread até ser avisada
+     */
+    static WaitStrategy spinThenPark(int spins) {
+        return new SpinThenPark(spins);
+    }
+
+    /**
+     * @return uma estratégia que pára a thread imediatamente até ser avisada por um produtor
+     */
+    static WaitStrategy blocking() {
+        return new Blocking();
+    }
+
+    /**
+     * @param sleepNanos o tempo que a thread fica parada entre verificações, depois das fases de spin e de yield
+     * @return uma estratégia que não depende do signal, verificando periodicamente a condição, para esperar por
+     * produtores que não o podem chamar, como os de outro processo
+     */
+    static WaitStrategy sleeping(long sleepNanos) {
+        return new Sleeping(sleepNanos);
+    }
+
+    class BusySpin implements WaitStrategy {
+        private static final int INTERRUPT_CHECK_INTERVAL = 1024;
+
+        @Override
+        public boolean await(BooleanSupplier ready, long deadline) throws InterruptedException {
+            for (int i = 1; !ready.getAsBoolean(); i++) {
+                if (i % INTERRUPT_CHECK_INTERVAL == 0) {
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+                    if (deadline - System.nanoTime() <= 0)
+                        return false;
+                }
+                Thread.onSpinWait();
+            }
+            return true;
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    class Yielding implements WaitStrategy {
+        private static final int SPINS = 100;
+
+        @Override
+        public boolean await(BooleanSupplier ready, long deadline) throws InterruptedException {
+            for (int i = 0; !ready.getAsBoolean(); i++) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if (deadline - System.nanoTime() <= 0)
+                    return false;
+                if (i < SPINS)
+                    Thread.onSpinWait();
+                else
+                    Thread.yield();
+            }
+            return true;
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    class Sleeping implements WaitStrategy {
+        private static final int SPINS = 100, YIELDS = 100;
+        private final long sleepNanos;
+
+        public Sleeping(long sleepNanos) {
+            this.sleepNanos = sleepNanos;
+        }
+
+        @Override
+        public boolean await(BooleanSupplier ready, long deadline) throws InterruptedException {
+            for (int i = 0; !ready.getAsBoolean(); i++) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                if (i < SPINS)
+                    Thread.onSpinWait();
+                else if (i < SPINS + YIELDS)
+                    Thread.yield();
+                else
+                    LockSupport.parkNanos(Math.min(sleepNanos, remaining));
+            }
+            return true;
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    /**
+     * Os consumidores param numa Condition. O contador waiters é incrementado antes de o consumidor voltar a
+     * verificar a condição e o produtor só o lê depois de inserir o elemento, pelo que pelo menos um dos dois vê a
+     * alteração do outro e não se perdem avisos. Cada aviso acorda um único consumidor; caso esse consumidor desista
+     * (timeout ou interrupção) com a condição verdadeira, passa o aviso a outro.
+     */
+    class Blocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public boolean await(BooleanSupplier ready, long deadline) throws InterruptedException {
+            if (ready.getAsBoolean())
+                return true;
+
+            lock.lock();
+            waiters.incrementAndGet();
+            try {
+                while (!ready.getAsBoolean()) {
+                    if (deadline == Long.MAX_VALUE) {
+                        notEmpty.await();
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            passSignal(ready);
+                            return false;
+                        }
+                        notEmpty.await(remaining, TimeUnit.NANOSECONDS);
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                passSignal(ready);
+                throw e;
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        private void passSignal(BooleanSupplier ready) {
+            if (ready.getAsBoolean())
+                notEmpty.signal();
+        }
+
+        @Override
+        public void signal() {
+            // as filas que publicam os elementos com escritas release não têm a barreira do compareAndSet, e sem ela
+            // a leitura de waiters podia ser feita antes de a escrita do elemento estar visível
+            VarHandle.fullFence();
+            if (waiters.get() == 0)
+                return;
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    class SpinThenPark extends Blocking {
+        private final int spins;
+
+        public SpinThenPark(int spins) {
+            this.spins = spins;
+        }
+
+        @Override
+        public boolean await(BooleanSupplier ready, long deadline) throws InterruptedException {
+            for (int i = 0; i < spins; i++) {
+                if (ready.getAsBoolean())
+                    return true;
+                Thread.onSpinWait();
+            }
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            return super.await(ready, deadline);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Fila limitada pelo peso total dos elementos em vez do seu número, por exemplo pelos bytes que ocupam, calculado por
+ * uma função (weigher) fornecida pelo utilizador. Os elementos ficam numa ConcurrentQueue, juntamente com o peso
+ * calculado quando foram colocados, para que a conta seja sempre acertada com o mesmo valor mesmo que o elemento mude
+ * entretanto. O peso total é um AtomicLong: o produtor reserva o peso do elemento com um compareAndSet, que só é
+ * feito quando o elemento cabe, e só depois o coloca na fila; o consumidor liberta o peso depois de o retirar. O peso
+ * total nunca passa de maxWeight, mesmo com muitos produtores em simultâneo.
+ *
+ * Com a estratégia bloqueante cada consumidor acorda um único produtor, que pode não caber enquanto outro mais leve
+ * caberia; para que os produtores à espera não fiquem parados com espaço livre, um produtor que consegue colocar o
+ * elemento depois de ter esperado acorda o seguinte caso ainda sobre espaço.
+ */
+public class WeightedConcurrentQueue<T> implements SimpleQueue<T> {
+    private static final class Weighted<T> {
+        final T value;
+        final long weight;
+
+        Weighted(T value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final ConcurrentQueue<Weighted<T>> queue = new ConcurrentQueue<>(WaitStrategy.busySpin());
+    private final ToLongFunction<? super T> weigher;
+    private final long maxWeight;
+    private final PaddedAtomicLong weight = new PaddedAtomicLong(0);
+    private final WaitStrategy notEmptyStrategy, notFullStrategy;
+    private final BooleanSupplier notEmpty = () -> !isEmpty();
+
+    /**
+     * @param maxWeight o peso total máximo dos elementos da fila
+     * @param weigher a função que dá o peso de cada elemento, maior ou igual a 0 e no máximo maxWeight
+     */
+    public WeightedConcurrentQueue(long maxWeight, ToLongFunction<? super T> weigher) {
+        this(maxWeight, weigher, WaitStrategy.yielding(), WaitStrategy.yielding());
+    }
+
+    /**
+     * @param maxWeight o peso total máximo dos elementos da fila
+     * @param weigher a função que dá o peso de cada elemento, maior ou igual a 0 e no máximo maxWeight
+     * @param notEmptyStrategy a estratégia usada pelos consumidores para esperar que a fila tenha elementos
+     * @param notFullStrategy a estratégia usada pelos produtores para esperar que o elemento caiba na fila
+     */
+    public WeightedConcurrentQueue(long maxWeight, ToLongFunction<? super T> weigher, WaitStrategy notEmptyStrategy,
+                                   WaitStrategy notFullStrategy) {
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("maxWeight must be positive");
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.notEmptyStrategy = notEmptyStrategy;
+        this.notFullStrategy = notFullStrategy;
+    }
+
+    public long maxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @return o peso total dos elementos na fila, incluindo o dos elementos que estão a ser colocados
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    private long weigh(T elem) {
+        if (elem == null)
+            throw new NullPointerException();
+        long w = weigher.applyAsLong(elem);
+        if (w < 0 || w > maxWeight)
+            throw new IllegalArgumentException("element weight " + w + " outside [0, " + maxWeight + "]");
+        return w;
+    }
+
+    /**
+     * Reserva o peso do elemento, caso caiba
+     * @return true caso o peso tenha sido reservado
+     */
+    private boolean reserve(long w) {
+        int attempts = 0;
+        long firstRetry = 0;
+        while (true) {
+            if (attempts++ == 1)
+                firstRetry = System.nanoTime();
+            long current = weight.get();
+            if (current + w > maxWeight)
+                return false;
+            if (weight.compareAndSet(current, current + w)) {
+                if (attempts > 1)
+                    QueueEvents.contention("WeightedConcurrentQueue", "reserve", attempts - 1, firstRetry);
+                return true;
+            }
+        }
+    }
+
+    private boolean tryPut(T elem, long w) {
+        if (!reserve(w))
+            return false;
+        queue.put(new Weighted<>(elem, w));
+        notEmptyStrategy.signal();
+        return true;
+    }
+
+    /**
+     * Tenta colocar o elemento sem esperar
+     * @param elem
+     * @return true caso o elemento tenha sido colocado, false caso o seu peso não caiba na fila
+     */
+    public boolean offer(T elem) {
+        return tryPut(elem, weigh(elem));
+    }
+
+    /**
+     * Igual ao offer, mas caso o elemento não caiba espera por espaço até passar o timeout
+     * @param timeout o tempo máximo de espera, em milissegundos
+     * @return true caso o elemento tenha sido colocado, false caso tenha ocorrido timeout
+     * @throws InterruptedException
+     */
+    public boolean offer(T elem, long timeout) throws InterruptedException {
+        long w = weigh(elem);
+        if (tryPut(elem, w))
+            return true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        BooleanSupplier fits = () -> weight.get() + w <= maxWeight;
+        while (!tryPut(elem, w)) {
+            if (!notFullStrategy.await(fits, deadline)) {
+                if (!tryPut(elem, w))
+                    return false;
+                break;
+            }
+        }
+        passSignal();
+        return true;
+    }
+
+    /**
+     * Coloca o elemento na fila, esperando que caiba. Tal como o put da BoundedConcurrentQueue não lança
+     * InterruptedException: uma interrupção durante a espera é guardada e reposta no fim
+     * @param elem
+     */
+    public void put(T elem) {
+        long w = weigh(elem);
+        if (tryPut(elem, w))
+            return;
+        BooleanSupplier fits = () -> weight.get() + w <= maxWeight;
+        boolean interrupted = false;
+        while (!tryPut(elem, w)) {
+            try {
+                notFullStrategy.await(fits, Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        passSignal();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void passSignal() {
+        if (weight.get() < maxWeight)
+            notFullStrategy.signal();
+    }
+
+    public T tryTake() {
+        Weighted<T> elem = queue.tryTake();
+        if (elem == null)
+            return null;
+        weight.addAndGet(-elem.weight);
+        notFullStrategy.signal();
+        return elem.value;
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * @return true caso o peso total tenha atingido maxWeight
+     */
+    public boolean isFull() {
+        return weight.get() >= maxWeight;
+    }
+
+    /**
+     * @return o número aproximado de elementos na fila
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    public T dequeue() throws InterruptedException {
+        T v;
+        while ((v = tryTake()) == null) {
+            notEmptyStrategy.await(notEmpty, Long.MAX_VALUE);
+        }
+        return v;
+    }
+
+    public T dequeue(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        T v;
+        while ((v = tryTake()) == null) {
+            if (!notEmptyStrategy.await(notEmpty, deadline))
+                return tryTake();
+        }
+        return v;
+    }
+}
@@ -0,0 +1,58 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestBackoff {
+    @Test
+    public void testAdaptiveCeilingFollowsFailureRate() {
+        Backoff.Adaptive backoff = (Backoff.Adaptive) Backoff.adaptive(4, 64);
+        Assert.assertEquals(4, backoff.ceiling());
+
+        for (int i = 0; i < 10; i++)
+            backoff.succeeded(3);
+        Assert.assertEquals(64, backoff.ceiling());
+
+        for (int i = 0; i < 100000; i++)
+            backoff.succeeded(0);
+        Assert.assertEquals(4, backoff.ceiling());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimits() {
+        Backoff.exponential(16, 8);
+    }
+
+    @Test
+    public void testQueueWithBackoffUnderContention() throws InterruptedException {
+        for (Backoff backoff : new Backoff[]{Backoff.exponential(1, 256), Backoff.adaptive(1, 256)}) {
+            int threads = 4, perThread = 20000;
+            ConcurrentQueue<Long> queue = new ConcurrentQueue<>(WaitStrategy.yielding(), backoff);
+            AtomicLong sum = new AtomicLong();
+            List<Thread> all = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                all.add(new Thread(() -> {
+                    for (long j = 1; j <= perThread; j++)
+                        queue.put(j);
+                }));
+                all.add(new Thread(() -> {
+                    try {
+                        for (int j = 0; j < perThread; j++)
+                            sum.addAndGet(queue.dequeue());
+                    } catch (InterruptedException e) {
+                    }
+                }));
+            }
+            for (Thread thread : all)
+                thread.start();
+            for (Thread thread : all)
+                thread.join(10000);
+
+            Assert.assertEquals((long) threads * perThread * (perThread + 1) / 2, sum.get());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestBoundedConcurrentQueue {
+    @Test
+    public void testCapacityIsRoundedToPowerOfTwo() {
+        Assert.assertEquals(2, new BoundedConcurrentQueue<String>(1).capacity());
+        Assert.assertEquals(8, new BoundedConcurrentQueue<String>(5).capacity());
+        Assert.assertEquals(16, new BoundedConcurrentQueue<String>(16).capacity());
+    }
+
+    @Test
+    public void testOfferFailsWhenFull() {
+        BoundedConcurrentQueue<Integer> queue = new BoundedConcurrentQueue<>(4);
+
+        Assert.assertTrue(queue.isEmpty());
+        for (int i = 0; i < 4; i++)
+            Assert.assertTrue(queue.offer(i));
+        Assert.assertTrue(queue.isFull());
+        Assert.assertFalse(queue.offer(4));
+
+        Assert.assertEquals(Integer.valueOf(0), queue.tryTake());
+        Assert.assertTrue(queue.offer(4));
+        for (int i = 1; i <= 4; i++)
+            Assert.assertEquals(Integer.valueOf(i), queue.tryTake());
+        Assert.assertNull(queue.tryTake());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTimedOfferAndDequeue() throws InterruptedException {
+        BoundedConcurrentQueue<String> queue = new BoundedConcurrentQueue<>(2, WaitStrategy.blocking(), WaitStrategy.blocking());
+
+        Assert.assertNull(queue.dequeue(50));
+        Assert.assertTrue(queue.offer("ISEL", 50));
+        Assert.assertTrue(queue.offer("ISEL", 50));
+        Assert.assertFalse(queue.offer("PC", 50));
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queue.dequeue();
+            } catch (InterruptedException e) {
+            }
+        });
+        consumer.start();
+        Assert.assertTrue(queue.offer("PC", 5000));
+        consumer.join();
+        Assert.assertEquals("ISEL", queue.dequeue(50));
+        Assert.assertEquals("PC", queue.dequeue(50));
+    }
+
+    @Test
+    public void testMultipleProducersAndConsumers() throws InterruptedException {
+        int threads = 4, perThread = 20000;
+        BoundedConcurrentQueue<Long> queue = new BoundedConcurrentQueue<>(16, WaitStrategy.spinThenPark(50),
+                WaitStrategy.spinThenPark(50));
+        AtomicLong sum = new AtomicLong();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            all.add(new Thread(() -> {
+                for (long j = 1; j <= perThread; j++)
+                    queue.put(j);
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++)
+                        sum.addAndGet(queue.dequeue());
+                } catch (InterruptedException e) {
+                }
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(10000);
+
+        Assert.assertEquals((long) threads * perThread * (perThread + 1) / 2, sum.get());
+        Assert.assertTrue(queue.isEmpty());
+    }
+}
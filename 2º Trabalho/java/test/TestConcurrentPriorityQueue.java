@@ -0,0 +1,116 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestConcurrentPriorityQueue {
+    @Test
+    public void testTakesInPriorityOrder() {
+        ConcurrentPriorityQueue<String> queue = new ConcurrentPriorityQueue<>();
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.tryTakeMin());
+        queue.put(5, "five");
+        queue.put(-3, "minus three");
+        queue.put(5, "other five");
+        queue.put(Long.MAX_VALUE, "max");
+        queue.put(Long.MIN_VALUE, "min");
+        queue.put(0, "zero");
+
+        Assert.assertFalse(queue.isEmpty());
+        Assert.assertEquals("min", queue.tryTakeMin());
+        Assert.assertEquals("minus three", queue.tryTakeMin());
+        Assert.assertEquals("zero", queue.tryTakeMin());
+        Assert.assertEquals("five", queue.tryTakeMin());    // mesma prioridade, ordem de inserção
+        Assert.assertEquals("other five", queue.tryTakeMin());
+        Assert.assertEquals("max", queue.tryTakeMin());
+        Assert.assertNull(queue.tryTakeMin());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSequentialRandomPrioritiesAreSorted() {
+        ConcurrentPriorityQueue<Long> queue = new ConcurrentPriorityQueue<>();
+        for (int i = 0; i < 10000; i++) {
+            long priority = ThreadLocalRandom.current().nextLong(1000);
+            queue.put(priority, priority);
+        }
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < 10000; i++) {
+            long current = queue.tryTakeMin();
+            Assert.assertTrue(current >= previous);
+            previous = current;
+        }
+        Assert.assertNull(queue.tryTakeMin());
+    }
+
+    @Test
+    public void testConcurrentNothingLostNorDuplicated() throws InterruptedException {
+        for (boolean relaxed : new boolean[]{false, true}) {
+            int threads = 4, perProducer = 20000;
+            ConcurrentPriorityQueue<Integer> queue = new ConcurrentPriorityQueue<>(WaitStrategy.spinThenPark(50), relaxed);
+            ConcurrentHashMap<Integer, Boolean> taken = new ConcurrentHashMap<>();
+            AtomicInteger duplicates = new AtomicInteger();
+            List<Thread> all = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                int base = i * perProducer;
+                all.add(new Thread(() -> {
+                    for (int j = 0; j < perProducer; j++)
+                        queue.put(ThreadLocalRandom.current().nextLong(100), base + j);
+                }));
+                all.add(new Thread(() -> {
+                    try {
+                        for (int j = 0; j < perProducer; j++) {
+                            if (taken.put(queue.takeMin(), Boolean.TRUE) != null)
+                                duplicates.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            for (Thread thread : all)
+                thread.start();
+            for (Thread thread : all)
+                thread.join(30000);
+
+            Assert.assertEquals(0, duplicates.get());
+            Assert.assertEquals(threads * perProducer, taken.size());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testRelaxedTakesNearTheMinimum() {
+        ConcurrentPriorityQueue<Long> queue = new ConcurrentPriorityQueue<>(WaitStrategy.yielding(), true);
+        for (long i = 0; i < 10000; i++)
+            queue.put(i, i);
+        // numa só thread a SprayList cai nos primeiros nós da lista, nunca longe do mínimo
+        for (int i = 0; i < 1000; i++) {
+            long taken = queue.tryTakeMin();
+            Assert.assertTrue("took " + taken + " at " + i, taken < i + 1000);
+        }
+    }
+
+    @Test
+    public void testTakeMinTimeout() throws InterruptedException {
+        ConcurrentPriorityQueue<String> queue = new ConcurrentPriorityQueue<>();
+        long start = System.nanoTime();
+        Assert.assertNull(queue.takeMin(100));
+        Assert.assertTrue(System.nanoTime() - start >= 90_000_000L);
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            queue.put(1, "late");
+        }).start();
+        Assert.assertEquals("late", queue.takeMin(5000));
+    }
+}
@@ -1,6 +1,15 @@
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class TestConcurrentQueue {
     @Test
     public void testOneElementPutAndTryTake(){
@@ -108,4 +117,272 @@ public class TestConcurrentQueue {
 
         Assert.assertTrue(queue.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDequeueWithEveryWaitStrategy() throws InterruptedException {
+        WaitStrategy[] strategies = {WaitStrategy.busySpin(), WaitStrategy.yielding(),
+                WaitStrategy.spinThenPark(100), WaitStrategy.blocking()};
+
+        for (WaitStrategy strategy : strategies) {
+            ConcurrentQueue<String> queue = new ConcurrentQueue<>(strategy);
+            String[] result = new String[1];
+            Thread consumer = new Thread(() -> {
+                try {
+                    result[0] = queue.dequeue();
+                } catch (InterruptedException e) {
+                    Assert.assertTrue(false);
+                }
+            });
+            consumer.start();
+            Thread.sleep(20);
+            queue.put("Hello");
+            consumer.join(1000);
+
+            Assert.assertFalse(consumer.isAlive());
+            Assert.assertEquals("Hello", result[0]);
+        }
+    }
+
+    @Test
+    public void testTimedDequeue() throws InterruptedException {
+        ConcurrentQueue<String> queue = new ConcurrentQueue<>(WaitStrategy.blocking());
+
+        long start = System.currentTimeMillis();
+        Assert.assertNull(queue.dequeue(50));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 50);
+
+        queue.put("ISEL");
+        Assert.assertEquals("ISEL", queue.dequeue(50));
+    }
+
+    @Test
+    public void testInterruptBlockedDequeue() throws InterruptedException {
+        ConcurrentQueue<String> queue = new ConcurrentQueue<>(WaitStrategy.spinThenPark(10));
+        boolean[] interrupted = new boolean[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.dequeue();
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+        consumer.start();
+        Thread.sleep(20);
+        consumer.interrupt();
+        consumer.join(1000);
+
+        Assert.assertTrue(interrupted[0]);
+    }
+
+    @Test
+    public void testManyBlockedConsumers() throws InterruptedException {
+        int consumers = 50;
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>(WaitStrategy.blocking());
+        int[] results = new int[consumers];
+        Thread[] threads = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            int li = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    results[li] = queue.dequeue();
+                } catch (InterruptedException e) {
+                    Assert.assertTrue(false);
+                }
+            });
+            threads[i].start();
+        }
+
+        Thread.sleep(20);
+        for (int i = 1; i <= consumers; i++)
+            queue.put(i);
+
+        int sum = 0;
+        for (int i = 0; i < consumers; i++) {
+            threads[i].join(1000);
+            Assert.assertFalse(threads[i].isAlive());
+            sum += results[i];
+        }
+        Assert.assertEquals(consumers * (consumers + 1) / 2, sum);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testPutAllAndDrainTo() {
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        List<Integer> result = new ArrayList<>();
+
+        queue.putAll(Collections.emptyList());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, queue.drainTo(result, 10));
+
+        queue.put(0);
+        queue.putAll(Arrays.asList(1, 2, 3, 4));
+        queue.put(5);
+
+        Assert.assertEquals(2, queue.drainTo(result, 2));
+        Assert.assertEquals(Arrays.asList(0, 1), result);
+        Assert.assertEquals(Integer.valueOf(2), queue.tryTake());
+        Assert.assertEquals(3, queue.drainTo(result, 10));
+        Assert.assertEquals(Arrays.asList(0, 1, 3, 4, 5), result);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentPutAllAndDrainTo() throws InterruptedException {
+        int threads = 4, batches = 2000, batchSize = 10;
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        long total = (long) threads * batches * batchSize;
+        AtomicLong taken = new AtomicLong();
+        List<List<Integer>> drained = new ArrayList<>();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            int producer = i;
+            all.add(new Thread(() -> {
+                List<Integer> batch = new ArrayList<>();
+                for (int b = 0; b < batches; b++) {
+                    batch.clear();
+                    for (int k = 0; k < batchSize; k++)
+                        batch.add(producer * batches * batchSize + b * batchSize + k);
+                    queue.putAll(batch);
+                }
+            }));
+            List<Integer> mine = new ArrayList<>();
+            drained.add(mine);
+            all.add(new Thread(() -> {
+                while (taken.get() < total) {
+                    int n = queue.drainTo(mine, 7);
+                    if (n == 0)
+                        Thread.yield();
+                    taken.addAndGet(n);
+                }
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(10000);
+
+        Assert.assertEquals(total, taken.get());
+        boolean[] seen = new boolean[(int) total];
+        for (List<Integer> mine : drained) {
+            int[] lastOfProducer = {-1, -1, -1, -1};
+            for (int value : mine) {
+                Assert.assertFalse(seen[value]);
+                seen[value] = true;
+                int producer = value / (batches * batchSize);
+                Assert.assertTrue(value > lastOfProducer[producer]);    // a ordem de cada produtor é mantida
+                lastOfProducer[producer] = value;
+            }
+        }
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testSize() {
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        Assert.assertEquals(0, queue.size());
+
+        queue.put(1);
+        queue.putAll(Arrays.asList(2, 3, 4));
+        Assert.assertEquals(4, queue.size());
+        queue.tryTake();
+        Assert.assertEquals(3, queue.size());
+        queue.drainTo(new ArrayList<>(), 10);
+        Assert.assertEquals(0, queue.size());
+        Assert.assertNull(queue.tryTake());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testStatisticsUnderContention() throws InterruptedException {
+        Assert.assertNull(new ConcurrentQueue<Integer>().statistics());
+        ConcurrentQueue<Integer> queue;
+        System.setProperty("queue.statistics", "true");
+        try {
+            queue = new ConcurrentQueue<>();
+        } finally {
+            System.clearProperty("queue.statistics");
+        }
+        Assert.assertNotNull(queue.statistics());
+
+        int threads = 4, perThread = 50000;
+        List<Thread> all = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            all.add(new Thread(() -> {
+                for (int j = 0; j < perThread; j++)
+                    queue.put(j);
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join();
+
+        Assert.assertEquals(threads * perThread, queue.size());
+        // os contadores só existem para as operações que tiveram contenção
+        for (String operation : queue.statistics().casFailures().keySet())
+            Assert.assertEquals("put", operation);
+        for (String operation : queue.statistics().helps().keySet())
+            Assert.assertEquals("put", operation);
+    }
+
+    @Test
+    public void testSnapshotStreamDoesNotConsume() {
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        for (int i = 0; i < 10000; i++)
+            queue.put(i);
+        queue.tryTake();
+
+        Assert.assertEquals(IntStream.range(1, 10000).boxed().collect(Collectors.toList()),
+                queue.stream().collect(Collectors.toList()));
+        Assert.assertEquals(IntStream.range(1, 10000).boxed().collect(Collectors.toList()),
+                queue.parallelStream().collect(Collectors.toList()));
+        Assert.assertEquals(9999, queue.size());
+        Assert.assertEquals(Integer.valueOf(1), queue.tryTake());
+    }
+
+    @Test
+    public void testDrainingStream() {
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        for (int i = 0; i < 100000; i++)
+            queue.put(i);
+
+        Spliterator<Integer> spliterator = queue.drainingSpliterator();
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        Assert.assertTrue(prefix.hasCharacteristics(Spliterator.ORDERED));
+        Integer[] first = new Integer[1];
+        Assert.assertTrue(prefix.tryAdvance(v -> first[0] = v));
+        Assert.assertEquals(Integer.valueOf(0), first[0]);
+
+        // a Stream paralela retira o resto, pela ordem da fila
+        List<Integer> rest = queue.drainingStream(true).collect(Collectors.toList());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(IntStream.range((int) prefix.estimateSize() + 1, 100000).boxed().collect(Collectors.toList()), rest);
+        Assert.assertNull(queue.tryTake());
+    }
+
+    static long usedAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void testTakenNodesAreNotRetained() throws InterruptedException {
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        Integer element = 1;
+        long before = usedAfterGc();
+        // cada nó ocupa pelo menos 16 bytes: 2M nós retidos seriam mais de 32 MB
+        for (int i = 0; i < 2_000_000; i++) {
+            queue.put(element);
+            queue.tryTake();
+        }
+        long retained = usedAfterGc() - before;
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertTrue("retained " + retained + " bytes", retained < 8 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestConcurrentQueues {
+    private static final ConcurrentQueues.Cardinality SINGLE = ConcurrentQueues.Cardinality.SINGLE;
+    private static final ConcurrentQueues.Cardinality MULTI = ConcurrentQueues.Cardinality.MULTI;
+
+    @Test
+    public void testFactoryPicksVariant() {
+        Assert.assertTrue(ConcurrentQueues.create(SINGLE, SINGLE, WaitStrategy.yielding(), false) instanceof SpscQueue);
+        Assert.assertTrue(ConcurrentQueues.create(MULTI, SINGLE, WaitStrategy.yielding(), false) instanceof MpscQueue);
+        Assert.assertTrue(ConcurrentQueues.create(SINGLE, MULTI, WaitStrategy.yielding(), false) instanceof SpmcQueue);
+        Assert.assertTrue(ConcurrentQueues.create(MULTI, MULTI, WaitStrategy.yielding(), false) instanceof ConcurrentQueue);
+        Assert.assertTrue(ConcurrentQueues.create(SINGLE, SINGLE, WaitStrategy.yielding(), true)
+                instanceof ConcurrentQueues.CardinalityCheckingQueue);
+        Assert.assertTrue(ConcurrentQueues.create(MULTI, MULTI, WaitStrategy.yielding(), true) instanceof ConcurrentQueue);
+    }
+
+    @Test
+    public void testEveryVariantKeepsOrder() {
+        for (ConcurrentQueues.Cardinality producers : ConcurrentQueues.Cardinality.values()) {
+            for (ConcurrentQueues.Cardinality consumers : ConcurrentQueues.Cardinality.values()) {
+                SimpleQueue<Integer> queue = ConcurrentQueues.create(producers, consumers, WaitStrategy.yielding(), true);
+                Assert.assertTrue(queue.isEmpty());
+                Assert.assertNull(queue.tryTake());
+                for (int i = 0; i < 100; i++)
+                    queue.put(i);
+                Assert.assertFalse(queue.isEmpty());
+                for (int i = 0; i < 100; i++)
+                    Assert.assertEquals(Integer.valueOf(i), queue.tryTake());
+                Assert.assertTrue(queue.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testDeclaredCardinalityUnderLoad() throws InterruptedException {
+        int perThread = 20000;
+        for (ConcurrentQueues.Cardinality producers : ConcurrentQueues.Cardinality.values()) {
+            for (ConcurrentQueues.Cardinality consumers : ConcurrentQueues.Cardinality.values()) {
+                SimpleQueue<Long> queue = ConcurrentQueues.create(producers, consumers, WaitStrategy.spinThenPark(50));
+                int producerThreads = producers == SINGLE ? 1 : 4, consumerThreads = consumers == SINGLE ? 1 : 4;
+                long total = (long) producerThreads * perThread;
+                AtomicLong sum = new AtomicLong();
+                List<Thread> all = new ArrayList<>();
+                for (int i = 0; i < producerThreads; i++) {
+                    all.add(new Thread(() -> {
+                        for (long j = 1; j <= perThread; j++)
+                            queue.put(j);
+                    }));
+                }
+                for (int i = 0; i < consumerThreads; i++) {
+                    all.add(new Thread(() -> {
+                        try {
+                            for (long j = 0; j < total / consumerThreads; j++)
+                                sum.addAndGet(queue.dequeue());
+                        } catch (InterruptedException e) {
+                        }
+                    }));
+                }
+                for (Thread thread : all)
+                    thread.start();
+                for (Thread thread : all)
+                    thread.join(10000);
+
+                Assert.assertEquals((long) producerThreads * perThread * (perThread + 1) / 2, sum.get());
+                Assert.assertTrue(queue.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testCheckedQueueDetectsSecondConsumer() throws InterruptedException {
+        SimpleQueue<String> queue = ConcurrentQueues.create(SINGLE, SINGLE, WaitStrategy.blocking(), true);
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.dequeue();
+            } catch (InterruptedException e) {
+            }
+        });
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING)
+            Thread.yield();
+
+        try {
+            queue.tryTake();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        queue.put("ISEL");
+        consumer.join();
+        Assert.assertTrue(queue.isEmpty());
+    }
+}
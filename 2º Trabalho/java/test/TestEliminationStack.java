@@ -0,0 +1,78 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestEliminationStack {
+    @Test
+    public void testLifoOrder() {
+        EliminationStack<Integer> stack = new EliminationStack<>();
+
+        Assert.assertTrue(stack.isEmpty());
+        Assert.assertNull(stack.tryTake());
+        for (int i = 0; i < 100; i++)
+            stack.put(i);
+        Assert.assertFalse(stack.isEmpty());
+        for (int i = 99; i >= 0; i--)
+            Assert.assertEquals(Integer.valueOf(i), stack.tryTake());
+        Assert.assertTrue(stack.isEmpty());
+        Assert.assertEquals(0, stack.eliminations());
+    }
+
+    @Test
+    public void testDequeueTimeout() throws InterruptedException {
+        EliminationStack<String> stack = new EliminationStack<>(4, WaitStrategy.blocking());
+        Assert.assertNull(stack.dequeue(50));
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            stack.put("late");
+        }).start();
+        Assert.assertEquals("late", stack.dequeue(5000));
+    }
+
+    @Test
+    public void testNothingLostNorDuplicated() throws InterruptedException {
+        for (int width : new int[]{0, 1, 8}) {
+            int threads = 4, perThread = 50000;
+            EliminationStack<Integer> stack = new EliminationStack<>(width, WaitStrategy.spinThenPark(50));
+            ConcurrentHashMap<Integer, Boolean> taken = new ConcurrentHashMap<>();
+            AtomicInteger duplicates = new AtomicInteger();
+            List<Thread> all = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                int base = i * perThread;
+                all.add(new Thread(() -> {
+                    for (int j = 0; j < perThread; j++)
+                        stack.put(base + j);
+                }));
+                all.add(new Thread(() -> {
+                    try {
+                        for (int j = 0; j < perThread; j++) {
+                            if (taken.put(stack.dequeue(), Boolean.TRUE) != null)
+                                duplicates.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            for (Thread thread : all)
+                thread.start();
+            for (Thread thread : all)
+                thread.join(30000);
+
+            Assert.assertEquals(0, duplicates.get());
+            Assert.assertEquals(threads * perThread, taken.size());
+            Assert.assertTrue(stack.isEmpty());
+            if (width == 0)
+                Assert.assertEquals(0, stack.eliminations());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestFlatCombiningQueue {
+    @Test
+    public void testPutAndTryTake() {
+        FlatCombiningQueue<String> queue = new FlatCombiningQueue<>();
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.tryTake());
+        queue.put("Hello World");
+        queue.put("ISEL");
+        Assert.assertFalse(queue.isEmpty());
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals("Hello World", queue.tryTake());
+        Assert.assertEquals("ISEL", queue.tryTake());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testBlockedConsumerIsWoken() throws InterruptedException {
+        FlatCombiningQueue<String> queue = new FlatCombiningQueue<>(WaitStrategy.blocking());
+
+        Assert.assertNull(queue.dequeue(50));
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+            }
+            queue.put("ISEL");
+        }).start();
+        Assert.assertEquals("ISEL", queue.dequeue(5000));
+    }
+
+    @Test
+    public void testManyThreadsWithShortLivedRecords() throws InterruptedException {
+        int rounds = 20, threads = 16, perThread = 2000;
+        FlatCombiningQueue<Long> queue = new FlatCombiningQueue<>(WaitStrategy.spinThenPark(50));
+        AtomicLong sum = new AtomicLong();
+
+        // cada ronda usa threads novas, para que os registos das anteriores sejam retirados da lista
+        for (int round = 0; round < rounds; round++) {
+            List<Thread> all = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                all.add(new Thread(() -> {
+                    for (long j = 1; j <= perThread; j++)
+                        queue.put(j);
+                }));
+                all.add(new Thread(() -> {
+                    try {
+                        for (int j = 0; j < perThread; j++)
+                            sum.addAndGet(queue.dequeue());
+                    } catch (InterruptedException e) {
+                    }
+                }));
+            }
+            for (Thread thread : all)
+                thread.start();
+            for (Thread thread : all)
+                thread.join(10000);
+        }
+
+        Assert.assertEquals((long) rounds * threads * perThread * (perThread + 1) / 2, sum.get());
+        Assert.assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,171 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class TestJournalQueue {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static String text(ByteBuffer message) {
+        return message == null ? null : StandardCharsets.UTF_8.decode(message).toString();
+    }
+
+    private static long segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".journal")).count();
+        }
+    }
+
+    @Test
+    public void testPutAndTake() throws IOException {
+        try (JournalQueue queue = new JournalQueue(directory)) {
+            Assert.assertTrue(queue.isEmpty());
+            Assert.assertNull(queue.tryTake());
+            queue.put("Hello World".getBytes(StandardCharsets.UTF_8));
+            queue.put(ByteBuffer.wrap("ISEL".getBytes(StandardCharsets.UTF_8)));
+            Assert.assertFalse(queue.isEmpty());
+
+            ByteBuffer message = queue.tryTake();
+            Assert.assertTrue(message.isReadOnly());
+            Assert.assertEquals("Hello World", text(message));
+            Assert.assertEquals("ISEL", text(queue.tryTake()));
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testMessagesAndPositionsSurviveReopen() throws IOException {
+        try (JournalQueue queue = new JournalQueue(directory, 64, JournalQueue.Fsync.ALWAYS, WaitStrategy.yielding())) {
+            for (int i = 0; i < 10; i++)
+                queue.put(("message " + i).getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals("message 0", text(queue.reader("a").tryRead()));
+            Assert.assertEquals("message 0", text(queue.reader("b").tryRead()));
+            Assert.assertEquals("message 1", text(queue.reader("b").tryRead()));
+        }
+        try (JournalQueue queue = new JournalQueue(directory, 64, JournalQueue.Fsync.ALWAYS, WaitStrategy.yielding())) {
+            queue.put("message 10".getBytes(StandardCharsets.UTF_8));
+            for (int i = 1; i <= 10; i++)
+                Assert.assertEquals("message " + i, text(queue.reader("a").tryRead()));
+            Assert.assertNull(queue.reader("a").tryRead());
+            Assert.assertEquals("message 2", text(queue.reader("b").tryRead()));
+        }
+    }
+
+    @Test
+    public void testConsumedSegmentsAreDeleted() throws IOException {
+        try (JournalQueue queue = new JournalQueue(directory, 64, JournalQueue.Fsync.NONE, WaitStrategy.yielding())) {
+            JournalQueue.Reader reader = queue.reader("only");
+            for (int i = 0; i < 100; i++)
+                queue.put(("message " + i).getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(segments(directory) > 10);
+
+            for (int i = 0; i < 100; i++)
+                Assert.assertEquals("message " + i, text(reader.tryRead()));
+            Assert.assertTrue(reader.isEmpty());
+            Assert.assertTrue(segments(directory) <= 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMessageLargerThanSegment() throws IOException {
+        try (JournalQueue queue = new JournalQueue(directory, 64, JournalQueue.Fsync.NONE, WaitStrategy.yielding())) {
+            queue.put(new byte[61]);
+        }
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws IOException, InterruptedException {
+        int threads = 4, perThread = 5000;
+        try (JournalQueue queue = new JournalQueue(directory, 4096, JournalQueue.Fsync.NONE, WaitStrategy.spinThenPark(50))) {
+            AtomicLong sum = new AtomicLong();
+            List<Thread> all = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                all.add(new Thread(() -> {
+                    ByteBuffer message = ByteBuffer.allocate(8);
+                    for (long j = 1; j <= perThread; j++) {
+                        message.clear();
+                        message.putLong(0, j);
+                        queue.put(message);
+                    }
+                }));
+                all.add(new Thread(() -> {
+                    try {
+                        for (int j = 0; j < perThread; j++)
+                            sum.addAndGet(queue.dequeue().getLong(0));
+                    } catch (InterruptedException e) {
+                    }
+                }));
+            }
+            for (Thread thread : all)
+                thread.start();
+            for (Thread thread : all)
+                thread.join(20000);
+
+            Assert.assertEquals((long) threads * perThread * (perThread + 1) / 2, sum.get());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testSharedReaderNeverRecreatesDeletedSegments() throws IOException, InterruptedException {
+        int threads = 4, messages = 20000;
+        try (JournalQueue queue = new JournalQueue(directory, 64, JournalQueue.Fsync.NONE, WaitStrategy.yielding())) {
+            JournalQueue.Reader reader = queue.reader("shared");
+            AtomicLong read = new AtomicLong();
+            List<Thread> all = new ArrayList<>();
+            all.add(new Thread(() -> {
+                for (int i = 0; i < messages; i++)
+                    queue.put(("message " + i).getBytes(StandardCharsets.UTF_8));
+            }));
+            // as threads do mesmo leitor lêem posições que as outras já podem ter avançado para lá de um segmento
+            for (int i = 0; i < threads; i++) {
+                all.add(new Thread(() -> {
+                    while (read.get() < messages) {
+                        if (!reader.isEmpty() && reader.tryRead() != null)
+                            read.incrementAndGet();
+                    }
+                }));
+            }
+            for (Thread thread : all)
+                thread.start();
+            for (Thread thread : all)
+                thread.join(30000);
+
+            Assert.assertEquals(messages, read.get());
+            Assert.assertTrue(reader.isEmpty());
+            Assert.assertTrue(segments(directory) <= 1);
+        }
+        // um segmento recriado vazio ficaria antes dos outros e pararia os leitores novos
+        try (JournalQueue queue = new JournalQueue(directory, 64, JournalQueue.Fsync.NONE, WaitStrategy.yielding())) {
+            queue.put("after reopen".getBytes(StandardCharsets.UTF_8));
+            JournalQueue.Reader reader = queue.reader("new");
+            String last = null;
+            for (ByteBuffer message; (message = reader.tryRead()) != null; )
+                last = text(message);
+            Assert.assertEquals("after reopen", last);
+        }
+    }
+}
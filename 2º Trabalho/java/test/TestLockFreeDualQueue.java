@@ -1,6 +1,12 @@
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 public class TestLockFreeDualQueue {
     @Test
     public void TestOneEnqueueDequeue(){
@@ -111,4 +117,210 @@ public class TestLockFreeDualQueue {
             Assert.assertEquals(messages, results[i]);
         }
     }
+
+    @Test
+    public void TestSize() throws InterruptedException {
+        LockFreeDualQueue<String> queue = new LockFreeDualQueue<>();
+        Assert.assertEquals(0, queue.size());
+
+        queue.enqueue("Hello");
+        queue.enqueue("ISEL");
+        Assert.assertEquals(2, queue.size());
+        queue.dequeue();
+        Assert.assertEquals(1, queue.size());
+        queue.dequeue();
+        Assert.assertEquals(0, queue.size());
+
+        // um consumidor à espera não torna o tamanho negativo
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.dequeue();
+            } catch (InterruptedException e) {
+            }
+        });
+        consumer.start();
+        Thread.sleep(50);
+        Assert.assertEquals(0, queue.size());
+        queue.enqueue("PC");
+        consumer.join();
+        Assert.assertEquals(0, queue.size());
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            Assert.assertTrue("consumer never parked", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void TestTimedDequeue() throws InterruptedException {
+        LockFreeDualQueue<String> queue = new LockFreeDualQueue<>();
+        long start = System.nanoTime();
+        Assert.assertNull(queue.dequeue(50));
+        Assert.assertTrue(System.nanoTime() - start >= 40_000_000L);
+
+        // o pedido cancelado não fica com o dado seguinte
+        queue.enqueue("Hello");
+        Assert.assertEquals("Hello", queue.dequeue(50));
+        Assert.assertNull(queue.dequeue(0));
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void TestCancelledRequestIsSkipped() throws InterruptedException {
+        LockFreeDualQueue<String> queue = new LockFreeDualQueue<>();
+        AtomicReference<String> first = new AtomicReference<>(), second = new AtomicReference<>(), timed = new AtomicReference<>("");
+        Thread c1 = new Thread(() -> {
+            try {
+                first.set(queue.dequeue());
+            } catch (InterruptedException e) {
+            }
+        });
+        Thread c2 = new Thread(() -> {
+            try {
+                timed.set(queue.dequeue(100));
+            } catch (InterruptedException e) {
+            }
+        });
+        Thread c3 = new Thread(() -> {
+            try {
+                second.set(queue.dequeue());
+            } catch (InterruptedException e) {
+            }
+        });
+        // os pedidos ficam ligados pela ordem c1, c2, c3
+        c1.start();
+        awaitParked(c1);
+        c2.start();
+        awaitParked(c2);
+        c3.start();
+        awaitParked(c3);
+        c2.join();
+        Assert.assertNull(timed.get());
+
+        queue.enqueue("Hello");
+        queue.enqueue("ISEL");
+        c1.join(5000);
+        c3.join(5000);
+        Assert.assertEquals("Hello", first.get());
+        Assert.assertEquals("ISEL", second.get());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void TestInterruptCancelsRequest() throws InterruptedException {
+        LockFreeDualQueue<String> queue = new LockFreeDualQueue<>();
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                outcome.set(queue.dequeue());
+            } catch (InterruptedException e) {
+                outcome.set(e);
+            }
+        });
+        consumer.start();
+        awaitParked(consumer);
+        consumer.interrupt();
+        consumer.join(5000);
+        Assert.assertTrue(outcome.get() instanceof InterruptedException);
+
+        // o dado não é entregue ao pedido abandonado
+        queue.enqueue("Hello");
+        Assert.assertEquals("Hello", queue.tryDequeue());
+    }
+
+    @Test
+    public void TestTryDequeueAndDrainTo() {
+        LockFreeDualQueue<String> queue = new LockFreeDualQueue<>();
+        List<String> drained = new ArrayList<>();
+        Assert.assertNull(queue.tryDequeue());
+        Assert.assertEquals(0, queue.drainTo(drained, 4));
+
+        for (String s : new String[]{"a", "b", "c", "d", "e"})
+            queue.enqueue(s);
+        Assert.assertEquals("a", queue.tryDequeue());
+        Assert.assertEquals(3, queue.drainTo(drained, 3));
+        Assert.assertEquals(Arrays.asList("b", "c", "d"), drained);
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(1, queue.drainTo(drained, 10));
+        Assert.assertEquals("e", drained.get(3));
+        Assert.assertTrue(queue.isEmpty());
+
+        // a fila continua a funcionar depois de ter sido esvaziada pelo drainTo
+        queue.enqueue("f");
+        Assert.assertEquals("f", queue.tryDequeue());
+    }
+
+    @Test
+    public void TestBatchDequeueWaitsForFirst() throws InterruptedException {
+        LockFreeDualQueue<Integer> queue = new LockFreeDualQueue<>();
+        List<Integer> taken = new ArrayList<>();
+        AtomicInteger count = new AtomicInteger();
+        Thread consumer = new Thread(() -> {
+            try {
+                count.set(queue.dequeue(taken, 4));
+            } catch (InterruptedException e) {
+            }
+        });
+        consumer.start();
+        awaitParked(consumer);
+        for (int i = 0; i < 6; i++)
+            queue.enqueue(i);
+        consumer.join(5000);
+
+        // o primeiro chega pelo pedido, os restantes (até 4) pelo drainTo
+        Assert.assertTrue(count.get() >= 1 && count.get() <= 4);
+        Assert.assertEquals(count.get(), taken.size());
+        for (int i = 0; i < taken.size(); i++)
+            Assert.assertEquals(i, (int) taken.get(i));
+        Assert.assertEquals(6 - count.get(), queue.size());
+        Assert.assertEquals(6 - count.get(), queue.dequeue(taken, 10));
+    }
+
+    @Test
+    public void TestMultiThreadBatchDequeue() throws InterruptedException {
+        LockFreeDualQueue<Integer> queue = new LockFreeDualQueue<>();
+        int producers = 4, perProducer = 10000, consumers = 4;
+        int total = producers * perProducer;
+        boolean[] seen = new boolean[total];
+        AtomicInteger received = new AtomicInteger();
+        Thread[] threads = new Thread[producers + consumers];
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++)
+                    queue.enqueue(base + i);
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads[producers + c] = new Thread(() -> {
+                List<Integer> batch = new ArrayList<>();
+                try {
+                    while (received.get() < total) {
+                        Integer v = queue.dequeue(20);
+                        if (v != null)
+                            batch.add(v);
+                        queue.drainTo(batch, 16);
+                        synchronized (seen) {
+                            for (int value : batch) {
+                                Assert.assertFalse(seen[value]);
+                                seen[value] = true;
+                            }
+                        }
+                        received.addAndGet(batch.size());
+                        batch.clear();
+                    }
+                } catch (InterruptedException e) {
+                }
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join(20000);
+        Assert.assertEquals(total, received.get());
+        Assert.assertTrue(queue.isEmpty());
+    }
 }
@@ -0,0 +1,71 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class TestMultiLaneQueue {
+    @Test
+    public void testSingleProducerKeepsOrder() {
+        MultiLaneQueue<Integer> queue = new MultiLaneQueue<>(4);
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.tryTake());
+        for (int i = 0; i < 100; i++)
+            queue.put(i);
+        Assert.assertEquals(100, queue.size());
+        for (int i = 0; i < 100; i++)
+            Assert.assertEquals(Integer.valueOf(i), queue.tryTake());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testFifoPerProducerAndNothingLost() throws InterruptedException {
+        int producers = 8, perProducer = 10000;
+        MultiLaneQueue<long[]> queue = new MultiLaneQueue<>(4, WaitStrategy.spinThenPark(50));
+        ConcurrentLinkedQueue<long[]> taken = new ConcurrentLinkedQueue<>();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < producers; i++) {
+            long producer = i;
+            all.add(new Thread(() -> {
+                for (long j = 0; j < perProducer; j++)
+                    queue.put(new long[]{producer, j});
+            }));
+        }
+        // um único consumidor, para que a ordem pela qual retira seja observável
+        all.add(new Thread(() -> {
+            try {
+                for (int j = 0; j < producers * perProducer; j++)
+                    taken.add(queue.dequeue());
+            } catch (InterruptedException e) {
+            }
+        }));
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(10000);
+
+        long[] next = new long[producers];
+        for (long[] elem : taken) {
+            Assert.assertEquals(next[(int) elem[0]], elem[1]);
+            next[(int) elem[0]]++;
+        }
+        for (long count : next)
+            Assert.assertEquals(perProducer, count);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testConsumerStealsFromOtherLanes() {
+        MultiLaneQueue<String> queue = new MultiLaneQueue<>(16);
+        queue.put("ISEL");
+
+        // o elemento está numa única lane, e as duas escolhidas ao acaso raramente são essa
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("ISEL", queue.tryTake());
+            queue.put("ISEL");
+        }
+    }
+}
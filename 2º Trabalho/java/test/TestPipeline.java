@@ -0,0 +1,198 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestPipeline {
+    @Test
+    public void testLinearPipeline() throws InterruptedException {
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(4, 500);
+        Pipeline pipeline = new Pipeline(threadPool);
+        AtomicLong sum = new AtomicLong();
+
+        Pipeline.Stage<String, Integer> parse = pipeline.stage("parse", 2, 8, Integer::parseInt);
+        Pipeline.Stage<Integer, Integer> square = pipeline.stage("square", 2, 8, v -> v * v);
+        Pipeline.Stage<Integer, Void> add = pipeline.stage("sum", 1, 8, v -> {
+            sum.addAndGet(v);
+            return null;
+        });
+        parse.to(square).to(add);
+
+        for (int i = 1; i <= 100; i++)
+            parse.put(Integer.toString(i));
+
+        Assert.assertTrue(pipeline.awaitQuiescence(5000));
+        Assert.assertEquals(338350, sum.get());
+        Assert.assertEquals(100, parse.getMetrics().getProcessed());
+        Assert.assertEquals(100, add.getMetrics().getProcessed());
+        Assert.assertEquals(0, add.getMetrics().getQueueDepth());
+
+        threadPool.shutdown();
+        Assert.assertTrue(threadPool.awaitTermination(1000));
+    }
+
+    @Test
+    public void testFanOutAndFanIn() throws InterruptedException {
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(4, 500);
+        Pipeline pipeline = new Pipeline(threadPool);
+        ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+        Pipeline.Stage<Integer, Integer> source = pipeline.stage("source", 1, 4, v -> v);
+        Pipeline.Stage<Integer, String> even = pipeline.stage("even", 1, 4, v -> v % 2 == 0 ? "even" : null);
+        Pipeline.Stage<Integer, String> all = pipeline.stage("all", 1, 4, v -> "all");
+        Pipeline.Stage<String, Void> count = pipeline.stage("count", 2, 4, k -> {
+            counts.computeIfAbsent(k, key -> new AtomicInteger()).incrementAndGet();
+            return null;
+        });
+        source.to(even).to(count);
+        source.to(all).to(count);
+
+        for (int i = 0; i < 50; i++)
+            source.put(i);
+
+        Assert.assertTrue(pipeline.awaitQuiescence(5000));
+        Assert.assertEquals(25, counts.get("even").get());
+        Assert.assertEquals(50, counts.get("all").get());
+        Assert.assertEquals(75, count.getMetrics().getProcessed());
+
+        threadPool.shutdown();
+        Assert.assertTrue(threadPool.awaitTermination(1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCycleIsRejected() {
+        Pipeline pipeline = new Pipeline(new SimpleThreadPoolExecutor(1, 100));
+        Pipeline.Stage<Integer, Integer> first = pipeline.stage("first", 1, 1, v -> v);
+        Pipeline.Stage<Integer, Integer> second = pipeline.stage("second", 1, 1, v -> v);
+        first.to(second);
+        second.to(first);
+    }
+
+    @Test
+    public void testResizeStage() throws InterruptedException {
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(4, 500);
+        Pipeline pipeline = new Pipeline(threadPool);
+        AtomicInteger concurrent = new AtomicInteger(), maxConcurrent = new AtomicInteger();
+
+        Pipeline.Stage<Integer, Void> slow = pipeline.stage("slow", 1, 1, v -> {
+            int c = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(c, Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            return null;
+        });
+
+        for (int i = 0; i < 40; i++)
+            slow.put(i);
+        Assert.assertSame(slow, pipeline.bottleneck());
+
+        slow.setThreads(3);
+        Assert.assertTrue(pipeline.awaitQuiescence(5000));
+        Assert.assertTrue(maxConcurrent.get() <= 3);
+        Assert.assertEquals(40, slow.getMetrics().getProcessed());
+
+        threadPool.shutdown();
+        Assert.assertTrue(threadPool.awaitTermination(1000));
+    }
+
+    @Test
+    public void testSaturatedPoolDoesNotRunStageInline() throws InterruptedException {
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(1, 500);
+        Pipeline pipeline = new Pipeline(threadPool);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> otherThread = new AtomicReference<>();
+
+        Pipeline.Stage<Integer, Void> blocked = pipeline.stage("blocked", 1, 1, v -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        Pipeline.Stage<Integer, Void> other = pipeline.stage("other", 1, 1, v -> {
+            otherThread.set(Thread.currentThread());
+            return null;
+        });
+
+        blocked.put(1);    // ocupa a única thread do ThreadPool
+        other.put(2);      // o ThreadPool recusa a tarefa, que fica pendente
+        Assert.assertNull(otherThread.get());
+        Assert.assertFalse(pipeline.awaitQuiescence(50));
+
+        release.countDown();
+        Assert.assertTrue(pipeline.awaitQuiescence(5000));
+        Assert.assertNotSame(Thread.currentThread(), otherThread.get());
+        Assert.assertEquals(1, other.getMetrics().getProcessed());
+
+        threadPool.shutdown();
+        Assert.assertTrue(threadPool.awaitTermination(1000));
+    }
+
+    @Test
+    public void testHandlerErrorDoesNotBlockQuiescence() throws InterruptedException {
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(4, 500);
+        Pipeline pipeline = new Pipeline(threadPool);
+        AtomicInteger handled = new AtomicInteger();
+
+        Pipeline.Stage<Integer, Void> stage = pipeline.stage("error", 1, 1, v -> {
+            if (v == 3)
+                throw new StackOverflowError("handler error");
+            handled.incrementAndGet();
+            return null;
+        });
+        for (int i = 0; i < 10; i++)
+            stage.put(i);
+
+        Assert.assertTrue(pipeline.awaitQuiescence(5000));
+        Assert.assertEquals(9, handled.get());
+        // a última tarefa termina depois de processar o último elemento; a reserva da tarefa substituída não fica perdida
+        for (int i = 0; i < 100 && stage.getMetrics().getActiveThreads() != 0; i++)
+            Thread.sleep(10);
+        Assert.assertEquals(0, stage.getMetrics().getActiveThreads());
+
+        threadPool.shutdown();
+        Assert.assertTrue(threadPool.awaitTermination(5000));
+    }
+
+    @Test
+    public void testShutdownWhileStageHasInput() throws InterruptedException {
+        SimpleThreadPoolExecutor threadPool = new SimpleThreadPoolExecutor(4, 500);
+        Pipeline pipeline = new Pipeline(threadPool);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+
+        Pipeline.Stage<Integer, Void> stage = pipeline.stage("shutdown", 1, 1, v -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.incrementAndGet();
+            return null;
+        });
+        for (int i = 0; i < 4; i++)
+            stage.put(i);
+        threadPool.shutdown();
+        try {
+            stage.setThreads(2);    // o ThreadPool já não aceita a nova tarefa
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+        }
+        release.countDown();
+
+        // a tarefa em curso também deixa de conseguir lançar tarefas, mas esvazia a fila em vez de terminar a thread
+        Assert.assertTrue(pipeline.awaitQuiescence(5000));
+        Assert.assertEquals(4, handled.get());
+        Assert.assertTrue(threadPool.awaitTermination(5000));
+    }
+}
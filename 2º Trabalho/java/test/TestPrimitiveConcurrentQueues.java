@@ -0,0 +1,115 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+public class TestPrimitiveConcurrentQueues {
+    @Test
+    public void testLongQueueSignalsEmptinessExplicitly() throws InterruptedException {
+        LongConcurrentQueue queue = new LongConcurrentQueue();
+        long[] taken = new long[1];
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertFalse(queue.tryTake(v -> taken[0] = v));
+        queue.put(0);
+        queue.put(Long.MIN_VALUE);
+        Assert.assertTrue(queue.tryTake(v -> taken[0] = v));
+        Assert.assertEquals(0, taken[0]);
+        Assert.assertEquals(Long.MIN_VALUE, queue.dequeue());
+        Assert.assertFalse(queue.dequeue(50, v -> taken[0] = v));
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testIntQueueSignalsEmptinessExplicitly() throws InterruptedException {
+        IntConcurrentQueue queue = new IntConcurrentQueue(WaitStrategy.blocking());
+        int[] taken = new int[1];
+
+        Assert.assertFalse(queue.tryTake(v -> taken[0] = v));
+        queue.put(-1);
+        Assert.assertTrue(queue.dequeue(50, v -> taken[0] = v));
+        Assert.assertEquals(-1, taken[0]);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testBoundedQueuesFailWhenFull() throws InterruptedException {
+        BoundedLongConcurrentQueue longs = new BoundedLongConcurrentQueue(2);
+        BoundedIntConcurrentQueue ints = new BoundedIntConcurrentQueue(2);
+        long[] takenLong = new long[1];
+        int[] takenInt = new int[1];
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(longs.offer(i));
+            Assert.assertTrue(ints.offer(i));
+        }
+        Assert.assertFalse(longs.offer(2));
+        Assert.assertFalse(ints.offer(2, 20));
+        Assert.assertEquals(0, longs.dequeue());
+        Assert.assertEquals(0, ints.dequeue());
+        Assert.assertTrue(longs.tryTake(v -> takenLong[0] = v));
+        Assert.assertTrue(ints.tryTake(v -> takenInt[0] = v));
+        Assert.assertEquals(1, takenLong[0]);
+        Assert.assertEquals(1, takenInt[0]);
+        Assert.assertFalse(longs.tryTake(v -> takenLong[0] = v));
+        Assert.assertFalse(ints.dequeue(20, v -> takenInt[0] = v));
+    }
+
+    @Test
+    public void testBoundedQueueDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        BoundedLongConcurrentQueue queue = new BoundedLongConcurrentQueue(1024);
+        long[] sum = new long[1];
+        LongConsumer add = v -> sum[0] += v;
+        Runnable round = () -> {
+            for (long i = 0; i < 100000; i++) {
+                queue.put(i);
+                queue.tryTake(add);
+            }
+        };
+        round.run();
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        round.run();
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        Assert.assertTrue("allocated " + allocated + " bytes", allocated < 100000);
+    }
+
+    @Test
+    public void testMultipleProducersAndConsumers() throws InterruptedException {
+        int threads = 4, perThread = 20000;
+        LongConcurrentQueue unbounded = new LongConcurrentQueue(WaitStrategy.spinThenPark(50));
+        BoundedLongConcurrentQueue bounded = new BoundedLongConcurrentQueue(16, WaitStrategy.spinThenPark(50),
+                WaitStrategy.spinThenPark(50));
+        AtomicLong sum = new AtomicLong();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            all.add(new Thread(() -> {
+                for (long j = 1; j <= perThread; j++) {
+                    unbounded.put(j);
+                    bounded.put(j);
+                }
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++)
+                        sum.addAndGet(unbounded.dequeue() + bounded.dequeue());
+                } catch (InterruptedException e) {
+                }
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(10000);
+
+        Assert.assertEquals((long) threads * perThread * (perThread + 1), sum.get());
+        Assert.assertTrue(unbounded.isEmpty());
+        Assert.assertTrue(bounded.isEmpty());
+    }
+}
@@ -0,0 +1,85 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TestQueueEvents {
+    private static List<RecordedEvent> events(Recording recording, String name) throws IOException {
+        Path file = Files.createTempFile("queue", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals(name))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    /**
+     * Verifica se a contenção só é gravada a partir de MIN_RETRIES repetições e se o evento tem a fila, a operação, o
+     * número de repetições e o tempo desde a primeira repetição
+     */
+    public void contentionIsRecordedFromMinRetries() throws IOException {
+        Assert.assertEquals(1, QueueEvents.MIN_RETRIES);
+        Assert.assertEquals(1, QueueEvents.SAMPLE_RATE);
+        try (Recording recording = new Recording()) {
+            recording.enable("pc.queue.CasContention");
+            recording.start();
+
+            QueueEvents.contention("TestQueue", "put", 0, System.nanoTime());    // sem repetições não há evento
+            QueueEvents.contention("TestQueue", "tryTake", 3, System.nanoTime() - 1_000_000);
+
+            recording.stop();
+            List<RecordedEvent> events = events(recording, "pc.queue.CasContention");
+            Assert.assertEquals(1, events.size());
+            RecordedEvent event = events.get(0);
+            Assert.assertEquals("TestQueue", event.getString("queue"));
+            Assert.assertEquals("tryTake", event.getString("operation"));
+            Assert.assertEquals(3, event.getInt("retries"));
+            Assert.assertTrue(event.getDuration("elapsed").compareTo(Duration.ofMillis(1)) >= 0);
+        }
+    }
+
+    @Test
+    /**
+     * Verifica se um pedido da LockFreeDualQueue satisfeito depois do limiar de 1 ms grava um RequestFulfilled com a
+     * duração da espera
+     */
+    public void slowRequestFulfilmentIsRecorded() throws IOException, InterruptedException {
+        LockFreeDualQueue<String> queue = new LockFreeDualQueue<>();
+        String[] result = new String[1];
+        try (Recording recording = new Recording()) {
+            recording.enable("pc.queue.RequestFulfilled");
+            recording.start();
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    result[0] = queue.dequeue();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            Thread.sleep(100);    // o consumidor fica à espera com um pedido na fila
+            queue.enqueue("Hello");
+            consumer.join(5000);
+            Assert.assertEquals("Hello", result[0]);
+
+            recording.stop();
+            List<RecordedEvent> events = events(recording, "pc.queue.RequestFulfilled");
+            Assert.assertEquals(1, events.size());
+            Assert.assertTrue(events.get(0).getDuration().compareTo(Duration.ofMillis(50)) >= 0);
+            Assert.assertEquals(consumer.getName(), events.get(0).getThread().getJavaName());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestQueuePublisher {
+    /**
+     * Subscritor que guarda os elementos recebidos e só pede elementos quando o teste o manda
+     */
+    private static class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+        final List<T> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+
+        public void onSubscribe(Flow.Subscription subscription) { this.subscription = subscription; }
+        public void onNext(T item) { received.add(item); }
+        public void onError(Throwable throwable) { }
+        public void onComplete() { completed.countDown(); }
+
+        void awaitReceived(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() < count && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testNonEmptyListenerOnlyOnTransition() {
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        AtomicInteger calls = new AtomicInteger();
+        queue.setNonEmptyListener(calls::incrementAndGet);
+
+        queue.put(1);
+        queue.put(2);
+        queue.putAll(List.of(3, 4));
+        Assert.assertEquals(1, calls.get());
+        while (queue.tryTake() != null) ;
+        queue.putAll(List.of(5, 6));
+        queue.put(7);
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDeliveryFollowsDemand() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        for (int i = 0; i < 10; i++)
+            queue.put(i);
+        QueuePublisher<Integer> publisher = QueuePublisher.of(queue, executor, 4);
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(5);
+        subscriber.awaitReceived(5);
+        Thread.sleep(50);
+        Assert.assertEquals(List.of(0, 1, 2, 3, 4), subscriber.received);
+
+        subscriber.subscription.request(10);
+        subscriber.awaitReceived(10);
+        Assert.assertEquals(10, subscriber.received.size());
+
+        // a fila está vazia e ainda há 5 pedidos: o put na fila vazia acorda a subscrição
+        queue.put(10);
+        subscriber.awaitReceived(11);
+        Assert.assertEquals(Integer.valueOf(10), subscriber.received.get(10));
+
+        publisher.close();
+        Assert.assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, publisher.subscribers());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDualQueuePublisher() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        LockFreeDualQueue<String> queue = new LockFreeDualQueue<>();
+        QueuePublisher<String> publisher = QueuePublisher.of(queue, executor);
+        RecordingSubscriber<String> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        queue.enqueue("Hello");
+        queue.enqueue("World");
+        subscriber.awaitReceived(2);
+        Assert.assertEquals(List.of("Hello", "World"), subscriber.received);
+        Assert.assertTrue(queue.isEmpty());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testElementsOfACancelledBatchGoBackToTheQueue() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        for (int i = 0; i < 10; i++)
+            queue.put(i);
+        QueuePublisher<Integer> publisher = QueuePublisher.of(queue, executor, 8);
+        RecordingSubscriber<Integer> failing = new RecordingSubscriber<Integer>() {
+            @Override
+            public void onNext(Integer item) {
+                super.onNext(item);
+                if (item == 2)
+                    throw new IllegalStateException();
+            }
+        };
+        publisher.subscribe(failing);
+        failing.subscription.request(10);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (publisher.subscribers() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        Assert.assertEquals(List.of(0, 1, 2), failing.received);
+
+        // os elementos 3 a 7 já tinham sido retirados no lote do subscritor que falhou
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(10);
+        subscriber.awaitReceived(7);
+        Assert.assertEquals(Set.of(3, 4, 5, 6, 7, 8, 9), new HashSet<>(subscriber.received));
+        Assert.assertTrue(queue.isEmpty());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testInvalidRequestErrorIsNotConcurrentWithOnNext() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ConcurrentQueue<Integer> queue = new ConcurrentQueue<>();
+        queue.put(1);
+        QueuePublisher<Integer> publisher = QueuePublisher.of(queue, executor);
+        CountDownLatch inOnNext = new CountDownLatch(1), release = new CountDownLatch(1), failed = new CountDownLatch(1);
+        AtomicInteger concurrentSignals = new AtomicInteger();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<Integer>() {
+            volatile boolean delivering;
+
+            @Override
+            public void onNext(Integer item) {
+                delivering = true;
+                inOnNext.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivering = false;
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                if (delivering)
+                    concurrentSignals.incrementAndGet();
+                failed.countDown();
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+        Assert.assertTrue(inOnNext.await(5, TimeUnit.SECONDS));
+
+        subscriber.subscription.request(0);
+        Assert.assertFalse(failed.await(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, concurrentSignals.get());
+        Assert.assertEquals(0, publisher.subscribers());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPublisherToQueueSubscriber() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ConcurrentQueue<Integer> source = new ConcurrentQueue<>();
+        QueuePublisher<Integer> publisher = QueuePublisher.of(source, executor, 8);
+        QueueSubscriber<Integer> subscriber = new QueueSubscriber<>(16, WaitStrategy.spinThenPark(50));
+        publisher.subscribe(subscriber);
+
+        for (int i = 0; i < 1000; i++)
+            source.put(i);
+        Thread.sleep(100);
+        // sem consumidores o subscritor só pediu capacity elementos
+        Assert.assertEquals(1000 - 16, source.size());
+
+        publisher.close();
+        for (int i = 0; i < 1000; i++)
+            Assert.assertEquals(Integer.valueOf(i), subscriber.dequeue(5000));
+        Assert.assertNull(subscriber.dequeue(5000));
+        Assert.assertTrue(subscriber.isDone());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testConcurrentConsumersKeepRequesting() throws InterruptedException {
+        int elements = 100000, consumers = 8;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ConcurrentQueue<Integer> source = new ConcurrentQueue<>();
+        QueuePublisher<Integer> publisher = QueuePublisher.of(source, executor, 2);
+        QueueSubscriber<Integer> subscriber = new QueueSubscriber<>(2);
+        publisher.subscribe(subscriber);
+        for (int i = 0; i < elements; i++)
+            source.put(i);
+        publisher.close();
+
+        // com capacidade 2 o subscritor pede mais um elemento por cada elemento retirado; um pedido perdido pára a
+        // subscrição e os consumidores ficam sem elementos antes do fim
+        AtomicInteger taken = new AtomicInteger();
+        Thread[] threads = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    while (subscriber.dequeue(5000) != null)
+                        taken.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join(30000);
+
+        Assert.assertEquals(elements, taken.get());
+        Assert.assertTrue(subscriber.isDone());
+        executor.shutdown();
+    }
+}
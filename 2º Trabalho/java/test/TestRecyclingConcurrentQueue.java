@@ -0,0 +1,92 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRecyclingConcurrentQueue {
+    @Test
+    public void testFifoAndIsEmpty() {
+        RecyclingConcurrentQueue<Integer> queue = new RecyclingConcurrentQueue<>();
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.tryTake());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++)
+                queue.put(i);
+            Assert.assertFalse(queue.isEmpty());
+            for (int i = 0; i < 1000; i++)
+                Assert.assertEquals(Integer.valueOf(i), queue.tryTake());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testNodesAreRecycled() {
+        RecyclingConcurrentQueue<Integer> queue = new RecyclingConcurrentQueue<>();
+        for (int i = 0; i < 100000; i++) {
+            queue.put(i);
+            Assert.assertEquals(Integer.valueOf(i), queue.tryTake());
+        }
+        // o sentinela, o nó do elemento e os nós que ainda não chegaram à lista de livres da thread
+        Assert.assertTrue("allocated " + queue.allocatedNodes(), queue.allocatedNodes() <= 3);
+    }
+
+    @Test
+    public void testSteadyStateDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        RecyclingConcurrentQueue<Integer> queue = new RecyclingConcurrentQueue<>();
+        Integer element = 1;
+        Runnable round = () -> {
+            for (int i = 0; i < 100000; i++) {
+                queue.put(element);
+                queue.tryTake();
+            }
+        };
+        round.run();
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        round.run();
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        Assert.assertTrue("allocated " + allocated + " bytes", allocated < 100000);
+    }
+
+    @Test
+    public void testMultipleProducersAndConsumers() throws InterruptedException {
+        int threads = 4, perThread = 50000;
+        RecyclingConcurrentQueue<Integer> queue = new RecyclingConcurrentQueue<>(WaitStrategy.spinThenPark(50));
+        ConcurrentHashMap<Integer, Boolean> taken = new ConcurrentHashMap<>();
+        AtomicInteger duplicates = new AtomicInteger();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            int base = i * perThread;
+            all.add(new Thread(() -> {
+                for (int j = 0; j < perThread; j++)
+                    queue.put(base + j);
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++) {
+                        if (taken.put(queue.dequeue(), Boolean.TRUE) != null)
+                            duplicates.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(30000);
+
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(threads * perThread, taken.size());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertTrue(queue.allocatedNodes() < threads * perThread);
+    }
+}
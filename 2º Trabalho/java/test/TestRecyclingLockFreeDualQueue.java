@@ -0,0 +1,137 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRecyclingLockFreeDualQueue {
+    @Test
+    public void testFifoAndIsEmpty() throws InterruptedException {
+        RecyclingLockFreeDualQueue<String> queue = new RecyclingLockFreeDualQueue<>();
+        String[] enqueueds = {"Hello", "WORLD", "Isel", "Lisboa", "Portugal"};
+
+        Assert.assertTrue(queue.isEmpty());
+        for (String enqueued : enqueueds)
+            queue.enqueue(enqueued);
+        Assert.assertFalse(queue.isEmpty());
+        for (String enqueued : enqueueds)
+            Assert.assertEquals(enqueued, queue.dequeue());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testRequestIsFulfilled() throws InterruptedException {
+        RecyclingLockFreeDualQueue<String> queue = new RecyclingLockFreeDualQueue<>();
+        String[] result = new String[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                result[0] = queue.dequeue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        Thread.sleep(100);    // o consumidor fica à espera com um pedido na fila
+        Assert.assertTrue(queue.isEmpty());
+        queue.enqueue("Hello");
+        consumer.join(5000);
+        Assert.assertEquals("Hello", result[0]);
+    }
+
+    @Test
+    public void testNodesAreRecycled() throws InterruptedException {
+        RecyclingLockFreeDualQueue<Integer> queue = new RecyclingLockFreeDualQueue<>();
+        for (int i = 0; i < 100000; i++) {
+            queue.enqueue(i);
+            Assert.assertEquals(Integer.valueOf(i), queue.dequeue());
+        }
+        Assert.assertTrue("allocated " + queue.allocatedNodes(), queue.allocatedNodes() <= 3);
+    }
+
+    @Test
+    public void testTryDequeueAndSize() throws InterruptedException {
+        RecyclingLockFreeDualQueue<String> queue = new RecyclingLockFreeDualQueue<>();
+        Assert.assertNull(queue.tryDequeue());
+        Assert.assertEquals(0, queue.size());
+        queue.enqueue("Hello");
+        queue.enqueue("World");
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals("Hello", queue.tryDequeue());
+        Assert.assertEquals("World", queue.dequeue(100));
+        Assert.assertNull(queue.tryDequeue());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testInterruptedDequeueDoesNotLoseElement() throws InterruptedException {
+        RecyclingLockFreeDualQueue<String> queue = new RecyclingLockFreeDualQueue<>();
+        boolean[] interrupted = new boolean[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.dequeue();
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+        consumer.start();
+        Thread.sleep(100);    // o consumidor fica parado com um pedido na fila
+        consumer.interrupt();
+        consumer.join(5000);
+        Assert.assertTrue(interrupted[0]);
+
+        // o pedido cancelado é ultrapassado em vez de receber o dado
+        queue.enqueue("Hello");
+        Assert.assertFalse(queue.isEmpty());
+        Assert.assertEquals("Hello", queue.tryDequeue());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTimedOutRequestsAreCancelledAndRecycled() throws InterruptedException {
+        RecyclingLockFreeDualQueue<Integer> queue = new RecyclingLockFreeDualQueue<>();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNull(queue.dequeue(1));
+            queue.enqueue(i);
+            Assert.assertEquals(Integer.valueOf(i), queue.dequeue());
+        }
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertTrue("allocated " + queue.allocatedNodes(), queue.allocatedNodes() <= 4);
+    }
+
+    @Test
+    public void testMultipleProducersAndConsumers() throws InterruptedException {
+        int threads = 4, perThread = 20000;
+        RecyclingLockFreeDualQueue<Integer> queue = new RecyclingLockFreeDualQueue<>();
+        ConcurrentHashMap<Integer, Boolean> taken = new ConcurrentHashMap<>();
+        AtomicInteger duplicates = new AtomicInteger();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            int base = i * perThread;
+            all.add(new Thread(() -> {
+                for (int j = 0; j < perThread; j++)
+                    queue.enqueue(base + j);
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++) {
+                        if (taken.put(queue.dequeue(), Boolean.TRUE) != null)
+                            duplicates.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(30000);
+
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(threads * perThread, taken.size());
+        Assert.assertTrue(queue.isEmpty());
+    }
+}
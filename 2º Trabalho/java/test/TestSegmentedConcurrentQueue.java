@@ -0,0 +1,71 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestSegmentedConcurrentQueue {
+    @Test
+    public void testOrderAcrossSegments() {
+        SegmentedConcurrentQueue<Integer> queue = new SegmentedConcurrentQueue<>(4, WaitStrategy.yielding());
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.tryTake());
+        for (int i = 0; i < 10; i++)
+            queue.put(i);
+        Assert.assertFalse(queue.isEmpty());
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(Integer.valueOf(i), queue.tryTake());
+        Assert.assertNull(queue.tryTake());
+        Assert.assertTrue(queue.isEmpty());
+
+        queue.put(10);
+        Assert.assertEquals(Integer.valueOf(10), queue.tryTake());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTimedDequeue() throws InterruptedException {
+        SegmentedConcurrentQueue<String> queue = new SegmentedConcurrentQueue<>(WaitStrategy.blocking());
+
+        Assert.assertNull(queue.dequeue(50));
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+            }
+            queue.put("ISEL");
+        }).start();
+        Assert.assertEquals("ISEL", queue.dequeue(5000));
+    }
+
+    @Test
+    public void testMultipleProducersAndConsumers() throws InterruptedException {
+        int threads = 4, perThread = 20000;
+        SegmentedConcurrentQueue<Long> queue = new SegmentedConcurrentQueue<>(64, WaitStrategy.spinThenPark(50));
+        AtomicLong sum = new AtomicLong();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            all.add(new Thread(() -> {
+                for (long j = 1; j <= perThread; j++)
+                    queue.put(j);
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++)
+                        sum.addAndGet(queue.dequeue());
+                } catch (InterruptedException e) {
+                }
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(10000);
+
+        Assert.assertEquals((long) threads * perThread * (perThread + 1) / 2, sum.get());
+        Assert.assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,139 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class TestSharedMemoryRing {
+    @Test
+    public void testOfferFailsWhenFullAndWrapsAround() throws IOException {
+        Path file = Files.createTempFile("ring", ".shm");
+        try (SharedMemoryRing ring = new SharedMemoryRing(file, 64, WaitStrategy.yielding())) {
+            Assert.assertTrue(ring.isEmpty());
+            Assert.assertNull(ring.tryTake());
+            for (int round = 0; round < 20; round++) {
+                // mensagens de 20 bytes (24 com o tamanho) não cabem exactamente no buffer de 64 bytes
+                byte[] first = new byte[20], second = new byte[20];
+                first[0] = (byte) round;
+                second[0] = (byte) -round;
+                Assert.assertTrue(ring.offer(first));
+                Assert.assertTrue(ring.offer(second));
+                Assert.assertFalse(ring.offer(new byte[20]));
+                Assert.assertArrayEquals(first, ring.tryTake());
+                Assert.assertArrayEquals(second, ring.tryTake());
+                Assert.assertTrue(ring.isEmpty());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLargestMessageFitsAtEveryPosition() throws IOException {
+        Path file = Files.createTempFile("ring", ".shm");
+        try (SharedMemoryRing ring = new SharedMemoryRing(file, 64, WaitStrategy.yielding())) {
+            Assert.assertEquals(28, ring.maxMessageSize());
+            byte[] largest = new byte[ring.maxMessageSize()];
+            for (int position = 0; position < 64; position += 4) {
+                // com o buffer vazio a maior mensagem cabe, mesmo que tenha de dar a volta
+                largest[0] = (byte) position;
+                Assert.assertTrue(ring.offer(largest));
+                Assert.assertArrayEquals(largest, ring.tryTake());
+                Assert.assertTrue(ring.offer(new byte[0]));    // avança 4 bytes
+                Assert.assertArrayEquals(new byte[0], ring.tryTake());
+            }
+            try {
+                // com o tail a meio, uma mensagem de 40 bytes nunca caberia
+                ring.offer(new byte[40]);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCapacityMustMatch() throws IOException {
+        Path file = Files.createTempFile("ring", ".shm");
+        try (SharedMemoryRing ring = new SharedMemoryRing(file, 64, WaitStrategy.yielding())) {
+            Assert.assertEquals(64, ring.capacity());
+            new SharedMemoryRing(file, 128, WaitStrategy.yielding());
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testParkingWaitStrategiesAreRejected() throws IOException {
+        Path file = Files.createTempFile("ring", ".shm");
+        try {
+            for (WaitStrategy strategy : new WaitStrategy[]{WaitStrategy.blocking(), WaitStrategy.spinThenPark(50)}) {
+                try {
+                    new SharedMemoryRing(file, 64, strategy);
+                    Assert.fail();
+                } catch (IllegalArgumentException e) {
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testProducerAndConsumerThreads() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("ring", ".shm");
+        int messages = 100000;
+        try (SharedMemoryRing ring = new SharedMemoryRing(file, 1024, WaitStrategy.yielding())) {
+            Thread producer = new Thread(() -> {
+                ByteBuffer message = ByteBuffer.allocate(8);
+                try {
+                    for (long i = 0; i < messages; i++) {
+                        message.putLong(0, i);
+                        ring.put(message);
+                    }
+                } catch (InterruptedException e) {
+                }
+            });
+            producer.start();
+            for (long i = 0; i < messages; i++)
+                Assert.assertEquals(i, ByteBuffer.wrap(ring.dequeue(5000)).getLong());
+            producer.join();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testHandoffBetweenProcesses() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("ring", ".shm");
+        int messages = 10000;
+        try (SharedMemoryRing ring = new SharedMemoryRing(file, SharedMemoryRing.DEFAULT_CAPACITY, WaitStrategy.sleeping(10000))) {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Process producer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "SharedMemoryRing",
+                    "producer", file.toString(), String.valueOf(messages)).redirectErrorStream(true)
+                    .redirectOutput(new File(file + ".log")).start();
+
+            long previous = Long.MIN_VALUE;
+            for (int i = 0; i < messages; i++) {
+                byte[] message = ring.dequeue(20000);
+                Assert.assertNotNull(message);
+                long sent = ByteBuffer.wrap(message).order(ByteOrder.nativeOrder()).getLong();
+                Assert.assertTrue(sent >= previous);
+                previous = sent;
+            }
+            Assert.assertEquals(0, producer.waitFor());
+            Assert.assertTrue(ring.isEmpty());
+        } finally {
+            Files.deleteIfExists(Paths.get(file + ".log"));
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestWeightedConcurrentQueue {
+    @Test
+    public void testOfferFailsWhenOverBudget() {
+        WeightedConcurrentQueue<String> queue = new WeightedConcurrentQueue<>(10, String::length);
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertTrue(queue.offer("ISEL"));
+        Assert.assertTrue(queue.offer("Lisboa"));
+        Assert.assertEquals(10, queue.weight());
+        Assert.assertTrue(queue.isFull());
+        Assert.assertFalse(queue.offer("P"));
+        Assert.assertTrue(queue.offer(""));    // peso 0 cabe sempre
+
+        Assert.assertEquals("ISEL", queue.tryTake());
+        Assert.assertEquals(6, queue.weight());
+        Assert.assertFalse(queue.offer("World"));
+        Assert.assertTrue(queue.offer("PC"));
+        Assert.assertEquals("Lisboa", queue.tryTake());
+        Assert.assertEquals("", queue.tryTake());
+        Assert.assertEquals("PC", queue.tryTake());
+        Assert.assertNull(queue.tryTake());
+        Assert.assertEquals(0, queue.weight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testElementHeavierThanBudget() {
+        new WeightedConcurrentQueue<String>(3, String::length).offer("Hello");
+    }
+
+    @Test
+    public void testTimedOfferWaitsForWeight() throws InterruptedException {
+        WeightedConcurrentQueue<String> queue = new WeightedConcurrentQueue<>(5, String::length,
+                WaitStrategy.blocking(), WaitStrategy.blocking());
+
+        Assert.assertNull(queue.dequeue(50));
+        Assert.assertTrue(queue.offer("Hello", 50));
+        Assert.assertFalse(queue.offer("W", 50));
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queue.dequeue();
+            } catch (InterruptedException e) {
+            }
+        });
+        consumer.start();
+        Assert.assertTrue(queue.offer("World", 5000));
+        consumer.join();
+        Assert.assertEquals("World", queue.dequeue(50));
+    }
+
+    @Test
+    public void testWeightNeverExceedsBudget() throws InterruptedException {
+        int threads = 4, perThread = 20000;
+        long budget = 1000;
+        WeightedConcurrentQueue<long[]> queue = new WeightedConcurrentQueue<>(budget, e -> e.length,
+                WaitStrategy.spinThenPark(50), WaitStrategy.spinThenPark(50));
+        AtomicLong maxObserved = new AtomicLong(), sum = new AtomicLong(), expected = new AtomicLong();
+        List<Thread> all = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            all.add(new Thread(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    long[] elem = new long[ThreadLocalRandom.current().nextInt(200)];
+                    expected.addAndGet(elem.length);
+                    queue.put(elem);
+                    maxObserved.accumulateAndGet(queue.weight(), Math::max);
+                }
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++)
+                        sum.addAndGet(queue.dequeue().length);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Thread thread : all)
+            thread.start();
+        for (Thread thread : all)
+            thread.join(30000);
+
+        Assert.assertEquals(expected.get(), sum.get());
+        Assert.assertTrue("weight " + maxObserved.get(), maxObserved.get() <= budget);
+        Assert.assertEquals(0, queue.weight());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTakenElementsAreNotRetained() throws InterruptedException {
+        WeightedConcurrentQueue<Integer> queue = new WeightedConcurrentQueue<>(1024, e -> 1);
+        Integer element = 1;
+        long before = TestConcurrentQueue.usedAfterGc();
+        // a fila interna não pode reter, através do primeiro sentinela, os nós já retirados
+        for (int i = 0; i < 2_000_000; i++) {
+            Assert.assertTrue(queue.offer(element));
+            queue.tryTake();
+        }
+        long retained = TestConcurrentQueue.usedAfterGc() - before;
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, queue.weight());
+        Assert.assertTrue("retained " + retained + " bytes", retained < 8 * 1024 * 1024);
+    }
+}